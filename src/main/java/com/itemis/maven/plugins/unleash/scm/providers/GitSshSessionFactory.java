@@ -1,20 +1,29 @@
 package com.itemis.maven.plugins.unleash.scm.providers;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
+import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.JschConfigSessionFactory;
 import org.eclipse.jgit.transport.OpenSshConfig.Host;
+import org.eclipse.jgit.transport.RemoteSession;
+import org.eclipse.jgit.transport.URIish;
 import org.eclipse.jgit.util.FS;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.itemis.maven.plugins.unleash.scm.ScmProviderInitialization;
 import com.itemis.maven.plugins.unleash.scm.providers.util.InMemoryIdentity;
+import com.itemis.maven.plugins.unleash.scm.providers.util.SshKeyCache;
 import com.jcraft.jsch.IdentityRepository;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.KeyPair;
 import com.jcraft.jsch.Session;
 import com.jcraft.jsch.UserInfo;
 import com.jcraft.jsch.agentproxy.AgentProxyException;
@@ -30,14 +39,20 @@ class GitSshSessionFactory extends JschConfigSessionFactory {
 
   static final String PREFERRED_AUTHENTICATIONS = "PreferredAuthentications";
   static final String PUBLIC_KEY = "publickey";
+  private static final List<String> DEFAULT_IDENTITY_FILES = Lists.newArrayList("identity", "id_rsa", "id_dsa");
 
   private final ScmProviderInitialization initialization;
   private final Logger logger;
   private UserInfo userInfo;
+  private final Map<String, SharedSession> sessions;
+  private Session lastConfiguredSession;
+  private int sessionsCreated;
+  private int sessionsReused;
 
   GitSshSessionFactory(ScmProviderInitialization initialization, Logger logger) {
     this.initialization = initialization;
     this.logger = logger;
+    this.sessions = Maps.newHashMap();
     this.userInfo = new UserInfo() {
       @Override
       public void showMessage(String message) {
@@ -70,18 +85,84 @@ class GitSshSessionFactory extends JschConfigSessionFactory {
     };
   }
 
+  /**
+   * Hands out one authenticated session per user, host and port. Each git command opens its own exec channel on the
+   * shared session, so key exchange and authentication only happen for the first command. Sessions are
+   * reference-counted by the transports using them and stay connected until {@link #closeSessions()} is called.
+   */
+  @Override
+  public synchronized RemoteSession getSession(URIish uri, CredentialsProvider credentialsProvider, FS fs, int tms)
+      throws TransportException {
+    String key = uri.getUser() + '@' + uri.getHost() + ':' + uri.getPort();
+    SharedSession shared = this.sessions.get(key);
+    if (shared != null && shared.session.isConnected()) {
+      shared.references++;
+      this.sessionsReused++;
+      return shared;
+    }
+    if (shared != null) {
+      this.sessions.remove(key);
+      shared.delegate.disconnect();
+    }
+
+    this.lastConfiguredSession = null;
+    RemoteSession delegate = super.getSession(uri, credentialsProvider, fs, tms);
+    if (this.lastConfiguredSession == null) {
+      // should never happen since every session passes #configure(Host, Session) but do not share unknown sessions
+      return delegate;
+    }
+    shared = new SharedSession(key, delegate, this.lastConfiguredSession);
+    this.lastConfiguredSession = null;
+    this.sessions.put(key, shared);
+    this.sessionsCreated++;
+    return shared;
+  }
+
+  /**
+   * Disconnects all shared sessions, regardless of whether they are still referenced.
+   */
+  synchronized void closeSessions() {
+    this.logger.fine("SSH sessions created: " + this.sessionsCreated + ", reused: " + this.sessionsReused);
+    for (SharedSession shared : this.sessions.values()) {
+      shared.delegate.disconnect();
+    }
+    this.sessions.clear();
+  }
+
+  synchronized int getSessionsCreated() {
+    return this.sessionsCreated;
+  }
+
+  synchronized int getSessionsReused() {
+    return this.sessionsReused;
+  }
+
+  private synchronized void release(SharedSession shared) {
+    shared.references--;
+    if (!shared.session.isConnected() && this.sessions.get(shared.key) == shared) {
+      this.sessions.remove(shared.key);
+    }
+  }
+
   @Override
   protected void configure(Host hc, Session session) {
     session.setUserInfo(this.userInfo);
+    this.lastConfiguredSession = session;
   }
 
+  /**
+   * Creates the client without delegating to the super implementation since that one parses the known_hosts and the
+   * default identity files over and over again. Known hosts and key pairs are served from the {@link SshKeyCache}
+   * instead.
+   */
   @Override
   protected JSch createDefaultJSch(FS fs) throws JSchException {
-    JSch jsch = super.createDefaultJSch(fs);
+    JSch jsch = new JSch();
+    configureJSch(jsch);
     File knownHosts = new File(new File(System.getProperty("user.home")), ".ssh/known_hosts");
     if (knownHosts.exists() && knownHosts.isFile()) {
       this.logger.fine("Using known_hosts file " + knownHosts.getAbsolutePath());
-      jsch.setKnownHosts(knownHosts.getAbsolutePath());
+      jsch.setHostKeyRepository(SshKeyCache.getKnownHosts(jsch, knownHosts));
     } else {
       this.logger.warning(
           "Tried to use file " + knownHosts.getAbsolutePath() + " as known_hosts file but this file does not exist!");
@@ -93,19 +174,17 @@ class GitSshSessionFactory extends JschConfigSessionFactory {
      */
     if (this.initialization.getSshPrivateKeyPassphrase().isPresent()) {
       String passphrase = this.initialization.getSshPrivateKeyPassphrase().get();
-      @SuppressWarnings("unchecked")
-      List<String> identityNames = Lists.newArrayList(jsch.getIdentityNames());
 
       if (this.initialization.getSshPrivateKey().isPresent()) {
-        jsch.addIdentity(InMemoryIdentity.newInstance("default", this.initialization.getSshPrivateKey().get(), jsch),
-            passphrase.getBytes());
+        addDefaultIdentities(jsch, fs, null);
+        KeyPair keyPair = SshKeyCache.getKeyPair(jsch, this.initialization.getSshPrivateKey().get(), passphrase);
+        jsch.addIdentity(InMemoryIdentity.newSharedInstance("default", keyPair, jsch), passphrase.getBytes());
       } else {
-        jsch.removeAllIdentity();
-        for (String name : identityNames) {
-          jsch.addIdentity(name, passphrase);
-        }
+        addDefaultIdentities(jsch, fs, passphrase);
       }
     } else {
+      addDefaultIdentities(jsch, fs, null);
+
       Connector sshAgentConnector = getAgentConnector();
       if (sshAgentConnector != null) {
         JSch.setConfig(PREFERRED_AUTHENTICATIONS, PUBLIC_KEY);
@@ -118,6 +197,32 @@ class GitSshSessionFactory extends JschConfigSessionFactory {
     return jsch;
   }
 
+  /**
+   * Adds the default identity files of the user (~/.ssh/identity, id_rsa, id_dsa) to the client.
+   */
+  private void addDefaultIdentities(JSch jsch, FS fs, String passphrase) {
+    File home = fs.userHome();
+    if (home == null) {
+      return;
+    }
+    File sshDir = new File(home, ".ssh");
+    if (!sshDir.isDirectory()) {
+      return;
+    }
+    for (String name : DEFAULT_IDENTITY_FILES) {
+      File identityFile = new File(sshDir, name);
+      if (identityFile.isFile()) {
+        try {
+          KeyPair keyPair = SshKeyCache.getKeyPair(jsch, identityFile, passphrase);
+          jsch.addIdentity(InMemoryIdentity.newSharedInstance(identityFile.getAbsolutePath(), keyPair, jsch), null);
+        } catch (JSchException e) {
+          // unreadable or unsupported key files are skipped, just as JGit does it
+          this.logger.fine("Skipping identity file " + identityFile.getAbsolutePath() + ": " + e.getMessage());
+        }
+      }
+    }
+  }
+
   @VisibleForTesting
   boolean isConnectorAvailable() {
     return PageantConnector.isConnectorAvailable() || SSHAgentConnector.isConnectorAvailable();
@@ -144,4 +249,28 @@ class GitSshSessionFactory extends JschConfigSessionFactory {
   private Connector getUnixAgentConnector() throws AgentProxyException {
     return new SSHAgentConnector(new JNAUSocketFactory());
   }
+
+  private class SharedSession implements RemoteSession {
+    private final String key;
+    private final RemoteSession delegate;
+    private final Session session;
+    private int references;
+
+    private SharedSession(String key, RemoteSession delegate, Session session) {
+      this.key = key;
+      this.delegate = delegate;
+      this.session = session;
+      this.references = 1;
+    }
+
+    @Override
+    public Process exec(String commandName, int timeout) throws IOException {
+      return this.delegate.exec(commandName, timeout);
+    }
+
+    @Override
+    public void disconnect() {
+      release(this);
+    }
+  }
 }
@@ -9,9 +9,12 @@ import java.net.Proxy.Type;
 import java.net.ProxySelector;
 import java.net.SocketAddress;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -22,44 +25,61 @@ import org.eclipse.jgit.api.CommitCommand;
 import org.eclipse.jgit.api.CreateBranchCommand;
 import org.eclipse.jgit.api.CreateBranchCommand.SetupUpstreamMode;
 import org.eclipse.jgit.api.DeleteTagCommand;
-import org.eclipse.jgit.api.FetchCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.LogCommand;
 import org.eclipse.jgit.api.LsRemoteCommand;
 import org.eclipse.jgit.api.MergeCommand;
 import org.eclipse.jgit.api.MergeCommand.FastForwardMode;
-import org.eclipse.jgit.api.PushCommand;
-import org.eclipse.jgit.api.ResetCommand.ResetType;
 import org.eclipse.jgit.api.RevertCommand;
+import org.eclipse.jgit.api.RmCommand;
 import org.eclipse.jgit.api.TagCommand;
 import org.eclipse.jgit.api.TransportCommand;
 import org.eclipse.jgit.api.TransportConfigCallback;
+import org.eclipse.jgit.api.errors.ConcurrentRefUpdateException;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.InvalidRemoteException;
+import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.dircache.DirCacheCheckout;
+import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.merge.MergeStrategy;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.FetchConnection;
+import org.eclipse.jgit.transport.FetchResult;
 import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.RemoteRefUpdate;
 import org.eclipse.jgit.transport.RemoteRefUpdate.Status;
-import org.eclipse.jgit.transport.SshSessionFactory;
 import org.eclipse.jgit.transport.SshTransport;
 import org.eclipse.jgit.transport.TagOpt;
 import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.Transport.Operation;
+import org.eclipse.jgit.transport.URIish;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
 import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.io.Closeables;
 import com.itemis.maven.plugins.unleash.scm.ScmException;
 import com.itemis.maven.plugins.unleash.scm.ScmOperation;
@@ -67,7 +87,18 @@ import com.itemis.maven.plugins.unleash.scm.ScmProvider;
 import com.itemis.maven.plugins.unleash.scm.ScmProviderInitialization;
 import com.itemis.maven.plugins.unleash.scm.annotations.ScmProviderType;
 import com.itemis.maven.plugins.unleash.scm.providers.merge.UnleashGitFullMergeStrategy;
+import com.itemis.maven.plugins.unleash.scm.providers.util.GitSettings;
 import com.itemis.maven.plugins.unleash.scm.providers.util.GitUtil;
+import com.itemis.maven.plugins.unleash.scm.providers.util.MirrorCache;
+import com.itemis.maven.plugins.unleash.scm.providers.util.ParallelCheckout;
+import com.itemis.maven.plugins.unleash.scm.providers.util.PartialCommit;
+import com.itemis.maven.plugins.unleash.scm.providers.util.RemoteRefCache;
+import com.itemis.maven.plugins.unleash.scm.providers.util.RemoteRefCreator;
+import com.itemis.maven.plugins.unleash.scm.providers.util.RepositoryMaintenance;
+import com.itemis.maven.plugins.unleash.scm.providers.util.SnapshotCommit;
+import com.itemis.maven.plugins.unleash.scm.providers.util.TransportPool;
+import com.itemis.maven.plugins.unleash.scm.providers.util.TransportPool.TransportCallback;
+import com.itemis.maven.plugins.unleash.scm.providers.util.WorkTreeWatcher;
 import com.itemis.maven.plugins.unleash.scm.requests.BranchRequest;
 import com.itemis.maven.plugins.unleash.scm.requests.CheckoutRequest;
 import com.itemis.maven.plugins.unleash.scm.requests.CommitRequest;
@@ -89,15 +120,24 @@ import com.itemis.maven.plugins.unleash.scm.results.HistoryResult;
 @ScmProviderType("git")
 public class ScmProviderGit implements ScmProvider {
   private static final String LOG_PREFIX = "Git - ";
+  private static final String CONFIG_SECTION_UNLEASH = "unleash";
+  private static final String CONFIG_KEY_SINGLE_REF = "singleRef";
 
   private Logger log;
   private Git git;
   private PersonIdent personIdent;
   private CredentialsProvider credentialsProvider;
-  private SshSessionFactory sshSessionFactory;
+  private GitSshSessionFactory sshSessionFactory;
+  private TransportConfigCallback transportConfigCallback;
+  private TransportPool transportPool;
+  private MirrorCache mirrorCache;
+  private WorkTreeWatcher workTreeWatcher;
   private File workingDir;
   private List<String> additionalThingsToPush;
+  private Set<String> nonAtomicRemotes;
   private GitUtil util;
+  private GitSettings settings;
+  private RemoteRefCache remoteRefCache;
 
   @Override
   public void initialize(final ScmProviderInitialization initialization) {
@@ -136,6 +176,9 @@ public class ScmProviderGit implements ScmProvider {
 
     this.workingDir = initialization.getWorkingDirectory();
     this.additionalThingsToPush = Lists.newArrayList();
+    this.nonAtomicRemotes = Sets.newHashSet();
+    this.settings = GitSettings.fromSystemProperties();
+    this.remoteRefCache = new RemoteRefCache(this.settings.getRefCacheMaxAge());
 
     if (this.workingDir.exists() && this.workingDir.isDirectory()
         && this.workingDir.list().length > 0) {
@@ -144,7 +187,13 @@ public class ScmProviderGit implements ScmProvider {
         Repository repo = builder.findGitDir(this.workingDir).build();
         this.git = Git.wrap(repo);
         this.personIdent = new PersonIdent(repo);
-        this.util = new GitUtil(this.git);
+        if (this.settings.isWatchWorkTree()) {
+          this.workTreeWatcher = WorkTreeWatcher.start(repo, this.log);
+        }
+        this.util = new GitUtil(this.git, this.workTreeWatcher, this.settings);
+        if (this.settings.isGcEnabled()) {
+          maintainRepository(repo);
+        }
       } catch (IOException e) {
         e.printStackTrace();
       }
@@ -155,10 +204,59 @@ public class ScmProviderGit implements ScmProvider {
           initialization.getUsername().get(), initialization.getPassword().or(""));
     }
     this.sshSessionFactory = new GitSshSessionFactory(initialization, this.log);
+    this.transportConfigCallback = new TransportConfigCallback() {
+
+      @Override
+      public void configure(Transport transport) {
+        if (isSshTransport(transport)) {
+          SshTransport sshTransport = (SshTransport) transport;
+          sshTransport.setSshSessionFactory(ScmProviderGit.this.sshSessionFactory);
+        }
+      }
+
+      private boolean isSshTransport(Transport transport) {
+        return transport instanceof SshTransport;
+      }
+    };
+    this.transportPool = new TransportPool(this.settings.getTransportIdleTimeout(),
+        this.credentialsProvider, this.transportConfigCallback, this.log);
+    if (this.settings.getMirrorCacheDir() != null) {
+      this.mirrorCache = new MirrorCache(this.settings.getMirrorCacheDir(),
+          this.settings.getMirrorCacheMaxSize(), this.settings.getMirrorCacheRefreshInterval(),
+          this.credentialsProvider, this.transportConfigCallback, this.log);
+    }
+  }
+
+  private void maintainRepository(Repository repository) {
+    RepositoryMaintenance maintenance = new RepositoryMaintenance(repository,
+        this.settings.getGcLooseObjects(), this.settings.getGcPacks(), this.log);
+    try {
+      maintenance.runIfNeeded();
+    } catch (IOException e) {
+      // the repository stays as it is, which only costs performance
+      if (this.log.isLoggable(Level.WARNING)) {
+        this.log.log(Level.WARNING, LOG_PREFIX + "Maintenance of the local repository failed.", e);
+      }
+    }
   }
 
   @Override
   public void close() {
+    if (this.remoteRefCache != null) {
+      this.remoteRefCache.invalidateAll();
+    }
+    if (this.transportPool != null) {
+      this.transportPool.close();
+    }
+    if (this.mirrorCache != null) {
+      this.mirrorCache.close();
+    }
+    if (this.workTreeWatcher != null) {
+      this.workTreeWatcher.close();
+    }
+    if (this.sshSessionFactory != null) {
+      this.sshSessionFactory.closeSessions();
+    }
     if (this.git != null) {
       this.git.close();
     }
@@ -187,6 +285,7 @@ public class ScmProviderGit implements ScmProvider {
 
   @Override
   public void checkout(CheckoutRequest request) throws ScmException {
+    long roundTrips = this.transportPool.getRoundTrips();
     if (this.log.isLoggable(Level.INFO)) {
       this.log.info(LOG_PREFIX + "Checking out from remote repository.");
     }
@@ -199,6 +298,7 @@ public class ScmProviderGit implements ScmProvider {
               + "' is not empty!");
     }
 
+    String defaultBranch = null;
     try {
       if (this.log.isLoggable(Level.FINE)) {
         this.log.fine(LOG_PREFIX + "Cloning remote repository.");
@@ -208,14 +308,23 @@ public class ScmProviderGit implements ScmProvider {
         this.log.fine(message.toString());
       }
 
-      CloneCommand clone = Git.cloneRepository().setDirectory(this.workingDir)
-          .setURI(request.getRemoteRepositoryUrl());
-      setAuthenticationDetails(clone);
-      if (!request.checkoutWholeRepository()) {
-        clone.setNoCheckout(true);
+      if (this.mirrorCache != null || isSingleRefCheckout(request)
+          || this.settings.getCheckoutThreads() > 1 || this.settings.isMinimizeRoundTrips()) {
+        defaultBranch = cloneByFetch(request);
+        if (request.checkoutWholeRepository() && !request.checkoutBranch()
+            && !request.checkoutTag() && !request.getRevision().isPresent()) {
+          checkoutDefaultBranch(defaultBranch);
+        }
+      } else {
+        CloneCommand clone = Git.cloneRepository().setDirectory(this.workingDir)
+            .setURI(request.getRemoteRepositoryUrl());
+        setAuthenticationDetails(clone);
+        if (!request.checkoutWholeRepository()) {
+          clone.setNoCheckout(true);
+        }
+        this.git = clone.call();
+        this.util = new GitUtil(this.git, null, this.settings);
       }
-      this.git = clone.call();
-      this.util = new GitUtil(this.git);
 
       if (this.log.isLoggable(Level.FINE)) {
         this.log.fine(LOG_PREFIX + "Cloning remote repository finished successfully.\n");
@@ -225,6 +334,11 @@ public class ScmProviderGit implements ScmProvider {
           "Unable to clone remote git repository '" + request.getRemoteRepositoryUrl()
               + "' into local working directory '" + this.workingDir.getAbsolutePath() + "'.",
           e);
+    } catch (IOException e) {
+      throw new ScmException(ScmOperation.CHECKOUT,
+          "Unable to clone remote git repository '" + request.getRemoteRepositoryUrl()
+              + "' into local working directory '" + this.workingDir.getAbsolutePath() + "'.",
+          e);
     }
 
     if (!request.checkoutWholeRepository()) {
@@ -240,14 +354,20 @@ public class ScmProviderGit implements ScmProvider {
       }
 
       try {
-        CheckoutCommand checkout = this.git.checkout().setStartPoint(revision).setAllPaths(false);
-        for (String path : request.getPathsToCheckout()) {
-          checkout.addPath(path);
+        ObjectId commitId = this.git.getRepository().resolve(revision);
+        if (commitId == null && !request.getRevision().isPresent() && defaultBranch != null) {
+          // HEAD is still unborn since nothing has been checked out yet
+          commitId = this.git.getRepository()
+              .resolve(Constants.DEFAULT_REMOTE_NAME + "/" + defaultBranch);
         }
-        checkout.call();
-      } catch (GitAPIException e) {
+        if (commitId == null) {
+          throw new ScmException(ScmOperation.CHECKOUT,
+              "Unable to resolve revision '" + revision + "'.");
+        }
+        materialize(commitId, request.getPathsToCheckout());
+      } catch (Exception e) {
         throw new ScmException(ScmOperation.CHECKOUT,
-            "Unable to checkout commit with id '" + request.getRevision().get()
+            "Unable to checkout commit with id '" + revision
                 + "' into local working directory '" + this.workingDir.getAbsolutePath() + "'.",
             e);
       }
@@ -267,17 +387,23 @@ public class ScmProviderGit implements ScmProvider {
         }
 
         try {
-          CheckoutCommand checkout =
-              this.git.checkout().setName(request.getBranch().get()).setCreateBranch(true)
-                  .setUpstreamMode(SetupUpstreamMode.SET_UPSTREAM).setStartPoint(startPoint);
-          checkout.call();
-        } catch (GitAPIException e) {
+          if (isHeadUnborn()) {
+            checkoutNewBranch(this.git.branchCreate().setName(request.getBranch().get())
+                .setStartPoint(startPoint));
+          } else {
+            CheckoutCommand checkout =
+                this.git.checkout().setName(request.getBranch().get()).setCreateBranch(true)
+                    .setUpstreamMode(SetupUpstreamMode.SET_UPSTREAM).setStartPoint(startPoint);
+            checkout.call();
+          }
+        } catch (Exception e) {
           throw new ScmException(ScmOperation.CHECKOUT,
               "Unable to checkout '" + request.getBranch().get()
                   + "' into local working directory '" + this.workingDir.getAbsolutePath() + "'.",
               e);
         }
       } else {
+        checkoutDefaultBranch(defaultBranch);
         if (this.log.isLoggable(Level.WARNING)) {
           StringBuilder message = new StringBuilder(LOG_PREFIX)
               .append("The remote repository contains no branch with name '")
@@ -293,15 +419,20 @@ public class ScmProviderGit implements ScmProvider {
       }
       if (hasTag(request.getTag().get())) {
         try {
-          CheckoutCommand checkout = this.git.checkout().setName(request.getTag().get());
-          checkout.call();
-        } catch (GitAPIException e) {
+          if (isHeadUnborn()) {
+            checkoutDetached(request.getTag().get());
+          } else {
+            CheckoutCommand checkout = this.git.checkout().setName(request.getTag().get());
+            checkout.call();
+          }
+        } catch (Exception e) {
           throw new ScmException(ScmOperation.CHECKOUT,
               "Unable to checkout tag '" + request.getTag().get()
                   + "' into local working directory '" + this.workingDir.getAbsolutePath() + "'.",
               e);
         }
       } else {
+        checkoutDefaultBranch(defaultBranch);
         if (this.log.isLoggable(Level.WARNING)) {
           StringBuilder message = new StringBuilder(LOG_PREFIX)
               .append("The remote repository contains no tag with name '")
@@ -320,9 +451,13 @@ public class ScmProviderGit implements ScmProvider {
         this.log.fine(message.toString());
       }
       try {
-        CheckoutCommand checkout = this.git.checkout().setName(request.getRevision().get());
-        checkout.call();
-      } catch (GitAPIException e) {
+        if (isHeadUnborn()) {
+          checkoutDetached(request.getRevision().get());
+        } else {
+          CheckoutCommand checkout = this.git.checkout().setName(request.getRevision().get());
+          checkout.call();
+        }
+      } catch (Exception e) {
         throw new ScmException(ScmOperation.CHECKOUT,
             "Unable to checkout commit with id '" + request.getRevision().get()
                 + "' into local working directory '" + this.workingDir.getAbsolutePath() + "'.",
@@ -333,19 +468,26 @@ public class ScmProviderGit implements ScmProvider {
     if (this.log.isLoggable(Level.INFO)) {
       this.log.info(LOG_PREFIX + "Checkout finished successfully!");
     }
+    logRoundTrips(ScmOperation.CHECKOUT, roundTrips);
   }
 
   @Override
   public String commit(CommitRequest request) throws ScmException {
+    long roundTrips = this.transportPool.getRoundTrips();
     if (this.log.isLoggable(Level.INFO)) {
       this.log.info(LOG_PREFIX + "Committing local changes.");
     }
 
-    if (!this.util.isDirty(request.getPathsToCommit())) {
+    // a single status snapshot serves the dirty check and the staging of the changes
+    org.eclipse.jgit.api.Status status = this.util.getStatus(request.getPathsToCommit());
+    boolean includeUntracked = !request.commitAllChanges() || request.includeUntrackedFiles();
+    boolean dirty =
+        includeUntracked ? !status.isClean() : !status.getUncommittedChanges().isEmpty();
+    if (!dirty) {
       if (this.log.isLoggable(Level.INFO)) {
         this.log.info(LOG_PREFIX + "Nothing to commit here.");
       }
-      return request.push() ? getLatestRemoteRevision() : getLocalRevision();
+      return request.push() ? getRemoteRevisionAfterUpdate() : getLocalRevision();
     }
 
     if (this.log.isLoggable(Level.FINE)) {
@@ -360,63 +502,115 @@ public class ScmProviderGit implements ScmProvider {
       this.log.fine(message.toString());
     }
 
-    // add all changes to be committed (either everything or the specified paths)
-    AddCommand add = this.git.add();
-    if (request.commitAllChanges()) {
-      if (request.includeUntrackedFiles()) {
-        add.addFilepattern(".");
-      } else {
-        for (String path : this.util.getUncommittedChangedPaths()) {
-          add.addFilepattern(path);
-        }
+    // stage exactly the changed paths of the snapshot (either everything or the specified paths)
+    Set<String> pathsToAdd = Sets.newHashSet(status.getModified());
+    pathsToAdd.addAll(status.getConflicting());
+    if (includeUntracked) {
+      pathsToAdd.addAll(status.getUntracked());
+    }
+    Set<String> pathsToRemove = status.getMissing();
+
+    String newRevision = null;
+    PartialCommit partialCommit = new PartialCommit(this.git.getRepository(),
+        this.settings.getPackInsertThreshold());
+    if (!request.commitAllChanges() && partialCommit.isApplicable(status.getConflicting())) {
+      // the changed paths are known, so index and tree are built without a temporary index
+      try {
+        newRevision = partialCommit.commit(request.getPathsToCommit(), pathsToAdd, pathsToRemove,
+            request.getMessage(), this.personIdent).getName();
+      } catch (GitAPIException e) {
+        throw new ScmException(ScmOperation.COMMIT,
+            "Could not commit changes of local repository.", e);
+      } catch (IOException e) {
+        throw new ScmException(ScmOperation.COMMIT,
+            "Could not commit changes of local repository.", e);
       }
     } else {
-      for (String path : request.getPathsToCommit()) {
-        add.addFilepattern(path);
-      }
+      newRevision = commitStagedChanges(request, pathsToAdd, pathsToRemove);
+    }
+
+    if (request.push()) {
+      PushRequest pr = PushRequest.builder().mergeStrategy(request.getMergeStrategy())
+          .mergeClient(request.getMergeClient().orNull()).build();
+      newRevision = push(pr);
+    }
+
+    if (this.log.isLoggable(Level.INFO)) {
+      this.log.info(LOG_PREFIX + "Commit finished successfully. New revision is: " + newRevision);
+    }
+    logRoundTrips(ScmOperation.COMMIT, roundTrips);
+
+    return newRevision;
+  }
+
+  /**
+   * Creates a commit of the current working copy state on top of HEAD without updating HEAD, the
+   * index or the working tree.
+   *
+   * @return the snapshot commit or the HEAD commit if the working copy is clean.
+   */
+  private RevCommit createSnapshotCommit(ScmOperation operation, String message,
+      boolean includeUntracked) throws ScmException {
+    org.eclipse.jgit.api.Status status = this.util.getStatus(Collections.<String> emptySet());
+    Set<String> pathsToAdd = Sets.newHashSet(status.getModified());
+    pathsToAdd.addAll(status.getConflicting());
+    if (includeUntracked) {
+      pathsToAdd.addAll(status.getUntracked());
+    }
+
+    SnapshotCommit snapshot =
+        new SnapshotCommit(this.git.getRepository(), this.settings.getPackInsertThreshold());
+    try {
+      return snapshot.create(pathsToAdd, status.getMissing(), message, this.personIdent);
+    } catch (GitAPIException e) {
+      throw new ScmException(operation, "Could not commit the state of the local working copy.", e);
+    } catch (IOException e) {
+      throw new ScmException(operation, "Could not commit the state of the local working copy.", e);
     }
+  }
+
+  private String commitStagedChanges(CommitRequest request, Set<String> pathsToAdd,
+      Set<String> pathsToRemove) throws ScmException {
     try {
-      add.call();
+      if (!pathsToAdd.isEmpty()) {
+        AddCommand add = this.git.add();
+        for (String path : pathsToAdd) {
+          add.addFilepattern(path);
+        }
+        add.call();
+      }
+      if (!pathsToRemove.isEmpty()) {
+        RmCommand rm = this.git.rm().setCached(true);
+        for (String path : pathsToRemove) {
+          rm.addFilepattern(path);
+        }
+        rm.call();
+      }
     } catch (GitAPIException e) {
       throw new ScmException(ScmOperation.COMMIT, "Unable to add local changes to the index.", e);
     }
 
-    // commit all added changes
+    // commit all added changes, the index is complete already so there is no need for setAll
     CommitCommand commit =
         this.git.commit().setMessage(request.getMessage()).setCommitter(this.personIdent);
-    if (request.commitAllChanges()) {
-      commit.setAll(true);
-    } else {
+    if (!request.commitAllChanges()) {
       for (String path : request.getPathsToCommit()) {
         commit.setOnly(path);
       }
     }
 
-    String newRevision = null;
     try {
       RevCommit result = commit.call();
-      newRevision = result.getName();
+      return result.getName();
     } catch (GitAPIException e) {
       throw new ScmException(ScmOperation.DELETE_TAG,
           "Could not commit chanhes of local repository.", e);
     }
-
-    if (request.push()) {
-      PushRequest pr = PushRequest.builder().mergeStrategy(request.getMergeStrategy())
-          .mergeClient(request.getMergeClient().orNull()).build();
-      push(pr);
-      newRevision = getLatestRemoteRevision();
-    }
-
-    if (this.log.isLoggable(Level.INFO)) {
-      this.log.info(LOG_PREFIX + "Commit finished successfully. New revision is: " + newRevision);
-    }
-
-    return newRevision;
   }
 
   @Override
   public String push(PushRequest request) throws ScmException {
+    long roundTrips = this.transportPool.getRoundTrips();
     if (this.log.isLoggable(Level.INFO)) {
       this.log.info(LOG_PREFIX + "Pushing local changes to remote repository.");
     }
@@ -438,18 +632,42 @@ public class ScmProviderGit implements ScmProvider {
     }
 
     // 1. update the local repository before pushing to remote
-    UpdateRequest ur = UpdateRequest.builder().mergeStrategy(request.getMergeStrategy())
-        .mergeClient(request.getMergeClient().orNull()).build();
-    update(ur);
+    // a detached HEAD (e.g. a tag checkout) has no remote branch to be updated from
+    boolean onLocalBranch = this.util.hasLocalBranch(localBranchName);
+    if (onLocalBranch) {
+      UpdateRequest ur = UpdateRequest.builder().mergeStrategy(request.getMergeStrategy())
+          .mergeClient(request.getMergeClient().orNull()).build();
+      update(ur);
+    } else if (this.log.isLoggable(Level.FINE)) {
+      this.log.fine(LOG_PREFIX + "HEAD is detached, skipping the update of the local repository.");
+    }
 
+    List<PushResult> results;
     try {
       // 2. push local changes to remote repository
-      PushCommand push = this.git.push().setRemote(remoteName).setPushAll().setPushTags();
-      setAuthenticationDetails(push);
+      List<RefSpec> refSpecs = Lists.newArrayList();
+      if (this.settings.isPushTargeted()) {
+        // only the current branch, created tags and branches have been queued already
+        if (onLocalBranch) {
+          refSpecs.add(new RefSpec(GitUtil.HEADS_NAME_PREFIX + localBranchName + ":"
+              + remoteBranchName));
+        }
+      } else {
+        refSpecs.add(Transport.REFSPEC_PUSH_ALL);
+        refSpecs.add(Transport.REFSPEC_TAGS);
+      }
       for (String additional : this.additionalThingsToPush) {
-        push.add(additional);
+        refSpecs.add(new RefSpec(additional));
+      }
+      if (refSpecs.isEmpty()) {
+        // a targeted push of a detached HEAD without queued tags or branches
+        if (this.log.isLoggable(Level.FINE)) {
+          this.log.fine(LOG_PREFIX + "Nothing to push, HEAD is detached and no refs are queued.");
+        }
+        results = Collections.emptyList();
+      } else {
+        results = pushRefs(remoteName, refSpecs, this.settings.isPushTargeted());
       }
-      Iterable<PushResult> results = push.call();
 
       Status failureStatus = null;
       String reason = null;
@@ -479,16 +697,26 @@ public class ScmProviderGit implements ScmProvider {
           e);
     }
 
-    String newRemoteRevision = getLatestRemoteRevision();
+    String newRemoteRevision;
+    // all push URIs got the same ref updates
+    RemoteRefUpdate branchUpdate = results.isEmpty() ? null
+        : results.get(0).getRemoteUpdate(remoteBranchName);
+    if (this.settings.isMinimizeRoundTrips() && branchUpdate != null) {
+      newRemoteRevision = branchUpdate.getNewObjectId().getName();
+    } else {
+      newRemoteRevision = getLatestRemoteRevision();
+    }
     if (this.log.isLoggable(Level.INFO)) {
       this.log.info(
           LOG_PREFIX + "Push finished successfully. New remote revision is: " + newRemoteRevision);
     }
+    logRoundTrips(ScmOperation.PUSH, roundTrips);
     return newRemoteRevision;
   }
 
   @Override
   public String update(UpdateRequest request) throws ScmException {
+    long roundTrips = this.transportPool.getRoundTrips();
     if (this.log.isLoggable(Level.INFO)) {
       this.log.info(LOG_PREFIX + "Updating local repository with remote changes.");
     }
@@ -508,45 +736,121 @@ public class ScmProviderGit implements ScmProvider {
       this.log.fine(message.toString());
     }
 
+    // nothing to negotiate if the remote branch did not move since the last fetch
+    ObjectId unchangedRevision = null;
+    if (!request.getTargetRevision().isPresent()) {
+      unchangedRevision = getUnchangedRemoteRevision(remoteName, remoteBranchName);
+    }
+
+    FetchResult fetchResult = null;
+    boolean fullFetch = false;
     try {
-      FetchCommand fetch = this.git.fetch().setRemote(remoteName).setTagOpt(TagOpt.AUTO_FOLLOW)
-          .setRemoveDeletedRefs(true);
-      setAuthenticationDetails(fetch);
-      fetch.call();
+      if (unchangedRevision != null) {
+        if (this.log.isLoggable(Level.FINE)) {
+          this.log.fine(LOG_PREFIX + "Remote branch '" + remoteBranchName
+              + "' is unchanged, skipping the fetch.");
+        }
+      } else if (this.settings.isUpdateNarrowFetch()) {
+        List<RefSpec> refSpecs =
+            getNarrowFetchRefSpecs(remoteName, remoteBranchName, request.getTargetRevision());
+        if (refSpecs != null) {
+          if (this.log.isLoggable(Level.FINE)) {
+            this.log.fine(LOG_PREFIX + "Fetching " + refSpecs + " only.");
+          }
+          fetchResult = fetchRefs(remoteName, TagOpt.NO_TAGS, false, refSpecs);
+        }
+      }
+      if (fetchResult == null && unchangedRevision == null) {
+        fetchResult = fetchRefs(remoteName, TagOpt.AUTO_FOLLOW, true);
+        fullFetch = true;
+      }
     } catch (GitAPIException e) {
       throw new ScmException(ScmOperation.UPDATE,
           "Could not fetch changes from Git remote '" + remoteName + " [" + connectionUrl + "]'.",
           e);
     }
 
-    MergeCommand merge =
-        this.git.merge().setFastForward(FastForwardMode.FF).setCommit(true).setMessage("Merge");
-    switch (request.getMergeStrategy()) {
-      case USE_LOCAL:
-        merge.setStrategy(MergeStrategy.OURS);
-        break;
-      case USE_REMOTE:
-        merge.setStrategy(MergeStrategy.THEIRS);
-        break;
-      case FULL_MERGE:
-        merge.setStrategy(new UnleashGitFullMergeStrategy(request.getMergeClient().get()));
-        break;
-      case DO_NOT_MERGE:
-        // nothing to do here!
-        break;
-      default:
-        throw new UnsupportedOperationException(
-            "Unknown merge strategy! API and implementation versions are incompatible!");
+    String requestedRevision;
+    Ref advertisedBranch =
+        fetchResult != null ? fetchResult.getAdvertisedRef(remoteBranchName) : null;
+    if (request.getTargetRevision().isPresent()) {
+      requestedRevision = request.getTargetRevision().get();
+    } else if (unchangedRevision != null) {
+      requestedRevision = unchangedRevision.getName();
+    } else if (this.settings.isMinimizeRoundTrips() && advertisedBranch != null) {
+      // the fetch has just received the current revision of the remote branch
+      requestedRevision = advertisedBranch.getObjectId().getName();
+    } else {
+      requestedRevision = getLatestRemoteRevision();
     }
-
-    String requestedRevision = request.getTargetRevision().or(getLatestRemoteRevision());
+    ObjectId revision;
     try {
-      ObjectId revision = this.git.getRepository().resolve(requestedRevision);
-      merge.include(revision);
+      revision = this.git.getRepository().resolve(requestedRevision);
+      if ((revision == null || !this.git.getRepository().hasObject(revision)) && !fullFetch) {
+        // the revision is not part of the narrowed or skipped fetch
+        fetchRefs(remoteName, TagOpt.AUTO_FOLLOW, true);
+        revision = this.git.getRepository().resolve(requestedRevision);
+      }
     } catch (Exception e) {
       throw new ScmException(ScmOperation.MERGE,
           "No Git commit id found for String '" + requestedRevision + "'.", e);
     }
+    if (revision == null) {
+      throw new ScmException(ScmOperation.MERGE,
+          "No Git commit id found for String '" + requestedRevision + "'.");
+    }
+
+    // the merge base tells whether there is anything to merge at all
+    ObjectId headId;
+    RevCommit mergeBase;
+    try {
+      headId = this.git.getRepository().resolve(Constants.HEAD);
+      mergeBase = headId != null ? getMergeBase(headId, revision) : null;
+    } catch (IOException e) {
+      throw new ScmException(ScmOperation.MERGE,
+          "Unable to compare the local and remote revision '" + requestedRevision + "'.", e);
+    }
+    if (mergeBase != null && mergeBase.equals(revision)) {
+      // the local branch contains the remote revision already, there is nothing to merge
+      String newRevision = getLocalRevision();
+      if (this.log.isLoggable(Level.INFO)) {
+        this.log.info(LOG_PREFIX + "Local repository is up to date. Revision is: " + newRevision);
+      }
+      logRoundTrips(ScmOperation.UPDATE, roundTrips);
+      return newRevision;
+    }
+
+    if (mergeBase != null && mergeBase.equals(headId)) {
+      if (this.log.isLoggable(Level.FINE)) {
+        this.log.fine(LOG_PREFIX + "Fast-forwarding local branch '" + localBranchName
+            + "' to remote revision '" + requestedRevision + "'.");
+      }
+      try {
+        fastForward(headId, revision, requestedRevision);
+      } catch (GitAPIException e) {
+        throw new ScmException(ScmOperation.MERGE,
+            "Could not fast-forward local working copy '" + this.workingDir.getAbsolutePath()
+                + "' to the changes fetched from Git remote '" + remoteName + " [" + connectionUrl
+                + "]'.",
+            e);
+      } catch (IOException e) {
+        throw new ScmException(ScmOperation.MERGE,
+            "Could not fast-forward local working copy '" + this.workingDir.getAbsolutePath()
+                + "' to the changes fetched from Git remote '" + remoteName + " [" + connectionUrl
+                + "]'.",
+            e);
+      }
+
+      String newRevision = getLocalRevision();
+      if (this.log.isLoggable(Level.INFO)) {
+        this.log.info(LOG_PREFIX + "Update finished successfully. New revision is: " + newRevision);
+      }
+      logRoundTrips(ScmOperation.UPDATE, roundTrips);
+      return newRevision;
+    }
+
+    MergeCommand merge = createMergeCommand(request);
+    merge.include(revision);
 
     if (this.log.isLoggable(Level.FINE)) {
       this.log.fine(LOG_PREFIX + "Merging remote updates into local working copy.");
@@ -574,11 +878,13 @@ public class ScmProviderGit implements ScmProvider {
     if (this.log.isLoggable(Level.INFO)) {
       this.log.info(LOG_PREFIX + "Update finished successfully. New revision is: " + newRevision);
     }
+    logRoundTrips(ScmOperation.UPDATE, roundTrips);
     return newRevision;
   }
 
   @Override
   public String tag(TagRequest request) throws ScmException {
+    long roundTrips = this.transportPool.getRoundTrips();
     if (this.log.isLoggable(Level.INFO)) {
       this.log.info(LOG_PREFIX + "Tagging local repository with '" + request.getTagName() + "'");
     }
@@ -600,38 +906,42 @@ public class ScmProviderGit implements ScmProvider {
     }
 
     if (request.tagFromWorkingCopy()) {
-      // 1. commit the changes (no merging because we stay local!)
       String preTagCommitMessage = request.getPreTagCommitMessage()
           .or("Preparation for tag creation (Tag name: '" + request.getTagName() + "').");
-      Builder builder = CommitRequest.builder().message(preTagCommitMessage);
-      if (request.includeUntrackedFiles()) {
-        builder.includeUntrackedFiles();
+      RevCommit tagTarget = null;
+      if (request.commitBeforeTagging()) {
+        // 1. commit the changes (no merging because we stay local!)
+        Builder builder = CommitRequest.builder().message(preTagCommitMessage);
+        if (request.includeUntrackedFiles()) {
+          builder.includeUntrackedFiles();
+        }
+        commit(builder.build());
+      } else {
+        // 1. commit the working copy state in-core, HEAD, index and working tree stay untouched
+        tagTarget = createSnapshotCommit(ScmOperation.TAG, preTagCommitMessage,
+            request.includeUntrackedFiles());
       }
-      commit(builder.build());
 
       try {
         // 2. tag local revision
         TagCommand tag = this.git.tag().setName(request.getTagName())
             .setMessage(request.getMessage()).setAnnotated(true).setTagger(this.personIdent);
+        if (tagTarget != null) {
+          tag.setObjectId(tagTarget);
+        }
         tag.call();
       } catch (GitAPIException e) {
         throw new ScmException(ScmOperation.TAG, "An error occurred during local Git tag creation.",
             e);
       }
 
-      if (!request.commitBeforeTagging()) {
-        try {
-          // 3. deletes the local commit that had been done for tag creation.
-          this.git.reset().setMode(ResetType.MIXED).setRef(Constants.HEAD + "~1").call();
-        } catch (GitAPIException e) {
-          throw new ScmException(ScmOperation.TAG,
-              "An error occurred during local commit resetting (no pre-tag commit was requested).",
-              e);
-        }
-      }
-
       String newRevision;
       String tagPushName = GitUtil.TAG_NAME_PREFIX + request.getTagName();
+      if (this.settings.isPushTargeted()
+          && (!request.push() || request.commitBeforeTagging())) {
+        // targeted pushes do not push all tags
+        this.additionalThingsToPush.add(tagPushName);
+      }
       if (request.push()) {
         if (request.commitBeforeTagging()) {
           // if the commit shall be kept, push everything with update of the local WC!
@@ -644,10 +954,8 @@ public class ScmProviderGit implements ScmProvider {
           String remoteName = this.util.getRemoteName(localBranchName);
           String connectionUrl = this.util.getConnectionUrlOfRemote(remoteName);
           try {
-            PushCommand push = this.git.push().setRemote(remoteName).add(tagPushName);
-            setAuthenticationDetails(push);
-            push.call();
-            newRevision = getLatestRemoteRevision();
+            pushRefs(remoteName, Lists.newArrayList(new RefSpec(tagPushName)));
+            newRevision = getRemoteRevisionAfterUpdate();
           } catch (GitAPIException e) {
             throw new ScmException(ScmOperation.PUSH,
                 "Unable to push locally created tag '" + request.getTagName() + "' to remote '"
@@ -663,17 +971,90 @@ public class ScmProviderGit implements ScmProvider {
         this.log.info(
             LOG_PREFIX + "Tag creation finished successfully. New revision is: " + newRevision);
       }
+      logRoundTrips(ScmOperation.TAG, roundTrips);
       return newRevision;
     } else {
-      // TODO implement tagging from url!
-      // git doesn't support remote tagging but we could clone in bare mode, create the tag, push it
-      // and delete the
-      // cloned repo afterwards
-      throw new UnsupportedOperationException(
-          "This SCM provider doesn't support tagging from remote URLs only. This feature needs some workarounds and is scheduled for a later version.");
+      // the tag object is created in a temporary repository and pushed without cloning the remote
+      String remoteUrl = getRemoteUrl(request.getRemoteRepositoryUrl(), ScmOperation.TAG);
+      RemoteRefCreator creator = new RemoteRefCreator(remoteUrl, this.credentialsProvider,
+          this.transportConfigCallback, this.log);
+      List<Repository> objectSources = getLocalObjectSources(remoteUrl);
+      try {
+        String newRevision = creator.createTag(request.getTagName(), request.getMessage(),
+            this.personIdent, request.getRevision().orNull(), objectSources).getName();
+        this.remoteRefCache.invalidateAll();
+        if (this.log.isLoggable(Level.INFO)) {
+          this.log.info(LOG_PREFIX
+              + "Remote tag creation finished successfully. Tagged revision is: " + newRevision);
+        }
+        return newRevision;
+      } catch (GitAPIException e) {
+        throw new ScmException(ScmOperation.TAG, "Unable to create tag '" + request.getTagName()
+            + "' in remote repository '" + remoteUrl + "'.", e);
+      } catch (IOException e) {
+        throw new ScmException(ScmOperation.TAG, "Unable to create tag '" + request.getTagName()
+            + "' in remote repository '" + remoteUrl + "'.", e);
+      } finally {
+        closeLocalObjectSources(objectSources);
+      }
     }
   }
 
+  /**
+   * @return the local repositories that may provide the objects of remote ref creations: the
+   *         working copy and the local mirror of the remote if the mirror cache contains one. The
+   *         sources have to be closed using {@link #closeLocalObjectSources(List)}.
+   */
+  private List<Repository> getLocalObjectSources(String remoteUrl) {
+    List<Repository> objectSources = Lists.newArrayList();
+    if (this.git != null) {
+      objectSources.add(this.git.getRepository());
+    }
+    if (this.mirrorCache != null) {
+      File mirror = this.mirrorCache.findMirror(remoteUrl);
+      if (mirror != null) {
+        try {
+          objectSources
+              .add(new FileRepositoryBuilder().setGitDir(mirror).setMustExist(true).build());
+        } catch (IOException e) {
+          if (this.log.isLoggable(Level.WARNING)) {
+            this.log.warning(LOG_PREFIX + "Unable to open local mirror '" + mirror.getAbsolutePath()
+                + "' (" + e.getMessage() + ").");
+          }
+        }
+      }
+    }
+    return objectSources;
+  }
+
+  /**
+   * Closes the repositories opened by {@link #getLocalObjectSources(String)}, the working copy
+   * stays open.
+   */
+  private void closeLocalObjectSources(List<Repository> objectSources) {
+    for (Repository source : objectSources) {
+      if (this.git == null || source != this.git.getRepository()) {
+        source.close();
+      }
+    }
+  }
+
+  /**
+   * @return the passed remote URL or the URL of the remote of the current branch if no URL is
+   *         given.
+   */
+  private String getRemoteUrl(Optional<String> remoteUrl, ScmOperation operation)
+      throws ScmException {
+    if (remoteUrl.isPresent()) {
+      return remoteUrl.get();
+    }
+    if (this.util == null) {
+      throw new ScmException(operation,
+          "No remote repository URL given and there is no local repository to take it from.");
+    }
+    return this.util.getCurrentConnectionUrl();
+  }
+
   @Override
   public boolean hasTag(String tagName) throws ScmException {
     if (this.log.isLoggable(Level.INFO)) {
@@ -694,25 +1075,32 @@ public class ScmProviderGit implements ScmProvider {
     }
 
     try {
-      LsRemoteCommand lsRemote = this.git.lsRemote().setRemote(remoteName).setTags(true);
-      setAuthenticationDetails(lsRemote);
-
-      String tagRefName = GitUtil.TAG_NAME_PREFIX + tagName;
-      for (Ref tag : lsRemote.call()) {
-        if (Objects.equal(tag.getName(), tagRefName)) {
-          return true;
-        }
-      }
+      return getRemoteRefs(remoteName).containsKey(GitUtil.TAG_NAME_PREFIX + tagName);
     } catch (GitAPIException e) {
       throw new ScmException(ScmOperation.INFO,
           "An error occurred while querying the remote git repository for tag '" + tagName + "'.",
           e);
     }
-    return false;
+  }
+
+  /**
+   * Batch variant of {@link #hasTag(String)} that answers all queries from a single ref
+   * advertisement of the remote repository.
+   *
+   * @param tagNames the names of the tags to search for.
+   * @return a map containing the existence of each of the passed tags in the remote repository,
+   *         iterating in the order of the passed names.
+   */
+  public Map<String, Boolean> hasTags(Collection<String> tagNames) throws ScmException {
+    if (this.log.isLoggable(Level.INFO)) {
+      this.log.info(LOG_PREFIX + "Searching for " + tagNames.size() + " Git tags");
+    }
+    return hasRemoteRefs(GitUtil.TAG_NAME_PREFIX, tagNames, "tags");
   }
 
   @Override
   public String deleteTag(DeleteTagRequest request) throws ScmException {
+    long roundTrips = this.transportPool.getRoundTrips();
     if (this.log.isLoggable(Level.INFO)) {
       this.log.info(LOG_PREFIX + "Deleting Git tag");
     }
@@ -728,9 +1116,7 @@ public class ScmProviderGit implements ScmProvider {
         this.log.fine(LOG_PREFIX + "Fetching remote tag");
       }
       try {
-        FetchCommand fetch = this.git.fetch().setRemote(remoteName).setTagOpt(TagOpt.FETCH_TAGS);
-        setAuthenticationDetails(fetch);
-        fetch.call();
+        fetchRefs(remoteName, TagOpt.FETCH_TAGS, false);
       } catch (GitAPIException e) {
         throw new ScmException(
             ScmOperation.DELETE_TAG, "Unable to fetch tags for deletion of tag '"
@@ -768,9 +1154,7 @@ public class ScmProviderGit implements ScmProvider {
         if (hasRemoteTag) {
           String tagPushName = ":" + GitUtil.TAG_NAME_PREFIX + request.getTagName();
           if (request.push()) {
-            PushCommand push = this.git.push().setRemote(remoteName).add(tagPushName);
-            setAuthenticationDetails(push);
-            push.call();
+            pushRefs(remoteName, Lists.newArrayList(new RefSpec(tagPushName)));
           } else {
             this.additionalThingsToPush.add(tagPushName);
           }
@@ -783,11 +1167,14 @@ public class ScmProviderGit implements ScmProvider {
       }
     }
 
-    return getLatestRemoteRevision();
+    String newRevision = getRemoteRevisionAfterUpdate();
+    logRoundTrips(ScmOperation.DELETE_TAG, roundTrips);
+    return newRevision;
   }
 
   @Override
   public String branch(BranchRequest request) throws ScmException {
+    long roundTrips = this.transportPool.getRoundTrips();
     if (this.log.isLoggable(Level.INFO)) {
       this.log.info(LOG_PREFIX + "Branching local repository.");
     }
@@ -822,20 +1209,30 @@ public class ScmProviderGit implements ScmProvider {
       }
 
       // 1. commit the changes if branching from WC is requested(no merging!)
+      RevCommit startPoint = null;
       if (!request.getRevision().isPresent()) {
         String preBranchCommitMessage =
             request.getPreBranchCommitMessage() != null ? request.getPreBranchCommitMessage()
                 : request.getMessage();
-        CommitRequest cr =
-            CommitRequest.builder().message(preBranchCommitMessage).noMerge().build();
-        commit(cr);
+        if (request.commitBeforeBranching()) {
+          CommitRequest cr =
+              CommitRequest.builder().message(preBranchCommitMessage).noMerge().build();
+          commit(cr);
+        } else {
+          // commit the working copy state in-core, HEAD, index and working tree stay untouched
+          startPoint = createSnapshotCommit(ScmOperation.BRANCH, preBranchCommitMessage, false);
+        }
       }
 
       try {
         // 2. branch from WC
         CreateBranchCommand branch = this.git.branchCreate().setName(request.getBranchName())
-            .setUpstreamMode(SetupUpstreamMode.TRACK)
-            .setStartPoint(request.getRevision().or(Constants.HEAD));
+            .setUpstreamMode(SetupUpstreamMode.TRACK);
+        if (startPoint != null) {
+          branch.setStartPoint(startPoint);
+        } else {
+          branch.setStartPoint(request.getRevision().or(Constants.HEAD));
+        }
         branch.call();
       } catch (GitAPIException e) {
         throw new ScmException(ScmOperation.BRANCH,
@@ -844,19 +1241,13 @@ public class ScmProviderGit implements ScmProvider {
             e);
       }
 
-      // 3. deletes the local commit that had been done for branch creation.
-      if (!request.commitBeforeBranching()) {
-        try {
-          this.git.reset().setMode(ResetType.MIXED).setRef(Constants.HEAD + "~1").call();
-        } catch (GitAPIException e) {
-          throw new ScmException(ScmOperation.BRANCH,
-              "An error occurred during local commit resetting (no pre-branch commit was requested).",
-              e);
-        }
-      }
-
       String branchPushName = GitUtil.HEADS_NAME_PREFIX + request.getBranchName();
       String newRevision;
+      if (this.settings.isPushTargeted()
+          && (!request.push() || request.commitBeforeBranching())) {
+        // targeted pushes do not push all branches
+        this.additionalThingsToPush.add(branchPushName);
+      }
       if (request.push()) {
         if (request.commitBeforeBranching()) {
           // if the commit shall be kept, push everything with update of the local WC!
@@ -868,10 +1259,8 @@ public class ScmProviderGit implements ScmProvider {
           String remoteName = this.util.getRemoteName(localBranchName);
           String connectionUrl = this.util.getConnectionUrlOfRemote(remoteName);
           try {
-            PushCommand push = this.git.push().setRemote(remoteName).add(branchPushName);
-            setAuthenticationDetails(push);
-            push.call();
-            newRevision = getLatestRemoteRevision();
+            pushRefs(remoteName, Lists.newArrayList(new RefSpec(branchPushName)));
+            newRevision = getRemoteRevisionAfterUpdate();
           } catch (GitAPIException e) {
             throw new ScmException(ScmOperation.PUSH,
                 "Unable to push locally created branch '" + request.getBranchName()
@@ -887,11 +1276,32 @@ public class ScmProviderGit implements ScmProvider {
         this.log.info(
             LOG_PREFIX + "Branch creation finished successfully. New revision is: " + newRevision);
       }
+      logRoundTrips(ScmOperation.BRANCH, roundTrips);
       return newRevision;
     } else {
-      // TODO implement remote branching -> similar to remote tagging!
-      throw new UnsupportedOperationException(
-          "This SCM provider doesn't support tagging from remote URLs only. This feature needs some workarounds and is scheduled for a later version.");
+      // a plain ref update of the remote, the commit is known to the remote already
+      String remoteUrl = getRemoteUrl(request.getRemoteRepositoryUrl(), ScmOperation.BRANCH);
+      RemoteRefCreator creator = new RemoteRefCreator(remoteUrl, this.credentialsProvider,
+          this.transportConfigCallback, this.log);
+      List<Repository> objectSources = getLocalObjectSources(remoteUrl);
+      try {
+        String newRevision = creator.createBranch(request.getBranchName(),
+            request.getRevision().orNull(), objectSources).getName();
+        this.remoteRefCache.invalidateAll();
+        if (this.log.isLoggable(Level.INFO)) {
+          this.log.info(LOG_PREFIX
+              + "Remote branch creation finished successfully. Branched revision: " + newRevision);
+        }
+        return newRevision;
+      } catch (GitAPIException e) {
+        throw new ScmException(ScmOperation.BRANCH, "Unable to create branch '"
+            + request.getBranchName() + "' in remote repository '" + remoteUrl + "'.", e);
+      } catch (IOException e) {
+        throw new ScmException(ScmOperation.BRANCH, "Unable to create branch '"
+            + request.getBranchName() + "' in remote repository '" + remoteUrl + "'.", e);
+      } finally {
+        closeLocalObjectSources(objectSources);
+      }
     }
   }
 
@@ -915,25 +1325,64 @@ public class ScmProviderGit implements ScmProvider {
     }
 
     try {
-      LsRemoteCommand lsRemote = this.git.lsRemote().setRemote(remoteName).setHeads(true);
-      setAuthenticationDetails(lsRemote);
-      Collection<Ref> branches = lsRemote.call();
-      for (Ref branch : branches) {
-        if (Objects.equal(branch.getName(), GitUtil.HEADS_NAME_PREFIX + branchName)) {
-          return true;
-        }
-      }
+      return getRemoteRefs(remoteName).containsKey(GitUtil.HEADS_NAME_PREFIX + branchName);
     } catch (GitAPIException e) {
       throw new ScmException(ScmOperation.INFO,
           "An error occurred while querying the remote git repository for branch '" + branchName
               + "'.",
           e);
     }
-    return false;
+  }
+
+  /**
+   * Batch variant of {@link #hasBranch(String)} that answers all queries from a single ref
+   * advertisement of the remote repository.
+   *
+   * @param branchNames the names of the branches to search for.
+   * @return a map containing the existence of each of the passed branches in the remote
+   *         repository, iterating in the order of the passed names.
+   */
+  public Map<String, Boolean> hasBranches(Collection<String> branchNames) throws ScmException {
+    if (this.log.isLoggable(Level.INFO)) {
+      this.log.info(LOG_PREFIX + "Searching for " + branchNames.size() + " Git branches");
+    }
+    return hasRemoteRefs(GitUtil.HEADS_NAME_PREFIX, branchNames, "branches");
+  }
+
+  private Map<String, Boolean> hasRemoteRefs(String refPrefix, Collection<String> names,
+      String refType) throws ScmException {
+    String localBranchName = this.util.getCurrentBranchName();
+    String remoteName = this.util.getRemoteName(localBranchName);
+    String remoteUrl = this.util.getConnectionUrlOfRemote(remoteName);
+
+    if (this.log.isLoggable(Level.FINE)) {
+      StringBuilder message = new StringBuilder(LOG_PREFIX).append("Query info:\n");
+      message.append("\t- ").append(refType.toUpperCase()).append(": ")
+          .append(Joiner.on(',').join(names)).append('\n');
+      message.append("\t- WORKING_DIR: ").append(this.workingDir.getAbsolutePath()).append('\n');
+      message.append("\t- REMOTE: ").append(remoteName).append('\n');
+      message.append("\t- REMOTE_URL: ").append(remoteUrl);
+      this.log.fine(message.toString());
+    }
+
+    try {
+      Map<String, ObjectId> remoteRefs = getRemoteRefs(remoteName);
+      Map<String, Boolean> result = Maps.newLinkedHashMap();
+      for (String name : names) {
+        result.put(name, remoteRefs.containsKey(refPrefix + name));
+      }
+      return result;
+    } catch (GitAPIException e) {
+      throw new ScmException(ScmOperation.INFO,
+          "An error occurred while querying the remote git repository for " + refType + " '"
+              + Joiner.on(',').join(names) + "'.",
+          e);
+    }
   }
 
   @Override
   public String deleteBranch(DeleteBranchRequest request) throws ScmException {
+    long roundTrips = this.transportPool.getRoundTrips();
     if (this.log.isLoggable(Level.INFO)) {
       this.log.info(LOG_PREFIX + "Deleting Git branch");
     }
@@ -962,10 +1411,8 @@ public class ScmProviderGit implements ScmProvider {
     if (hasBranch(request.getBranchName())) {
       if (request.push()) {
         try {
-          PushCommand push = this.git.push().setRemote(remoteName)
-              .add(":" + GitUtil.HEADS_NAME_PREFIX + request.getBranchName());
-          setAuthenticationDetails(push);
-          push.call();
+          pushRefs(remoteName, Lists
+              .newArrayList(new RefSpec(":" + GitUtil.HEADS_NAME_PREFIX + request.getBranchName())));
         } catch (GitAPIException e) {
           e.printStackTrace();
         }
@@ -974,11 +1421,14 @@ public class ScmProviderGit implements ScmProvider {
       }
     }
 
-    return getLatestRemoteRevision();
+    String newRevision = getRemoteRevisionAfterUpdate();
+    logRoundTrips(ScmOperation.DELETE_BRANCH, roundTrips);
+    return newRevision;
   }
 
   @Override
   public String revertCommits(RevertCommitsRequest request) throws ScmException {
+    long roundTrips = this.transportPool.getRoundTrips();
     if (this.log.isLoggable(Level.INFO)) {
       this.log.info(LOG_PREFIX + "Reverting Git commits");
     }
@@ -996,6 +1446,14 @@ public class ScmProviderGit implements ScmProvider {
         .mergeClient(request.getMergeClient().orNull()).build();
     update(updateRequest);
 
+    try {
+      fetchMissingRefs(Collections.<String>emptyList(),
+          Lists.newArrayList(request.getFromRevision(), request.getToRevision()));
+    } catch (Exception e) {
+      throw new ScmException(ScmOperation.REVERT_COMMITS,
+          "Unable to fetch the commits to revert from the remote repository.", e);
+    }
+
     RevCommit from =
         this.util.resolveCommit(Optional.of(request.getFromRevision()), Optional.<String>absent());
     RevCommit to =
@@ -1003,7 +1461,7 @@ public class ScmProviderGit implements ScmProvider {
     int diff = from.getCommitTime() - to.getCommitTime();
     if (diff == 0) {
       // nothing to revert! return the latest remote version
-      return getLatestRemoteRevision();
+      return getRemoteRevisionAfterUpdate();
     } else if (diff < 0) {
       // older from version (wrong direction!
       throw new ScmException(ScmOperation.REVERT_COMMITS,
@@ -1029,7 +1487,8 @@ public class ScmProviderGit implements ScmProvider {
           revert.setStrategy(MergeStrategy.THEIRS);
           break;
         case FULL_MERGE:
-          revert.setStrategy(new UnleashGitFullMergeStrategy(request.getMergeClient().get()));
+          revert.setStrategy(new UnleashGitFullMergeStrategy(request.getMergeClient().get(),
+              this.settings.getPackInsertThreshold()));
           break;
         case DO_NOT_MERGE:
           // nothing to do here!
@@ -1056,6 +1515,7 @@ public class ScmProviderGit implements ScmProvider {
     if (this.log.isLoggable(Level.INFO)) {
       this.log.info(LOG_PREFIX + "Revert finished successfully. New revision is: " + newRevision);
     }
+    logRoundTrips(ScmOperation.REVERT_COMMITS, roundTrips);
 
     return newRevision;
   }
@@ -1078,13 +1538,9 @@ public class ScmProviderGit implements ScmProvider {
       String remoteName = this.util.getRemoteName(localBranchName);
       String remoteNameBranch = this.util.getRemoteBranchName(localBranchName);
 
-      LsRemoteCommand lsRemote = this.git.lsRemote().setHeads(true).setRemote(remoteName);
-      setAuthenticationDetails(lsRemote);
-      Collection<Ref> branches = lsRemote.call();
-      for (Ref branch : branches) {
-        if (Objects.equal(branch.getTarget().getName(), remoteNameBranch)) {
-          return branch.getObjectId().getName();
-        }
+      ObjectId remoteRevision = getRemoteRefs(remoteName).get(remoteNameBranch);
+      if (remoteRevision != null) {
+        return remoteRevision.getName();
       }
     } catch (Exception e) {
       e.printStackTrace();
@@ -1092,6 +1548,31 @@ public class ScmProviderGit implements ScmProvider {
     return "";
   }
 
+  /**
+   * Returns the revision of the remote branch of the current branch after an operation of the
+   * provider updated the remote or the local repository. If round trips shall be minimized, the
+   * revision is taken from the remote-tracking ref which is kept up to date by the pushes and
+   * fetches of the provider. Otherwise, or if the branch is not tracked, the remote is queried.
+   */
+  private String getRemoteRevisionAfterUpdate() {
+    if (this.settings.isMinimizeRoundTrips()) {
+      String localBranchName = this.util.getCurrentBranchName();
+      ObjectId trackingRevision = this.util.getRemoteTrackingRevision(
+          this.util.getRemoteName(localBranchName), this.util.getRemoteBranchName(localBranchName));
+      if (trackingRevision != null) {
+        return trackingRevision.getName();
+      }
+    }
+    return getLatestRemoteRevision();
+  }
+
+  private void logRoundTrips(ScmOperation operation, long roundTripsBefore) {
+    if (this.log.isLoggable(Level.FINE)) {
+      this.log.fine(LOG_PREFIX + operation + " needed "
+          + (this.transportPool.getRoundTrips() - roundTripsBefore) + " remote round trip(s).");
+    }
+  }
+
   @Override
   public String calculateTagConnectionString(String currentConnectionString, String tagName) {
     // connection string only points to the git dir and branches/tags have to be specified and
@@ -1124,6 +1605,12 @@ public class ScmProviderGit implements ScmProvider {
     }
 
     try {
+      List<String> tags = Lists.newArrayList(request.getStartTag().asSet());
+      tags.addAll(request.getEndTag().asSet());
+      List<String> revisions = Lists.newArrayList(request.getStartRevision().asSet());
+      revisions.addAll(request.getEndRevision().asSet());
+      fetchMissingRefs(tags, revisions);
+
       LogCommand logCommand = this.git.log();
       if (request.getMessageFilters().isEmpty()) {
         // set the limit of commits to be retrieved only if no filters are provided since the user
@@ -1283,23 +1770,509 @@ public class ScmProviderGit implements ScmProvider {
     return resultBuilder.build();
   }
 
-  private void setAuthenticationDetails(TransportCommand<?, ?> command) {
-    command.setCredentialsProvider(this.credentialsProvider);
+  /**
+   * Returns the heads and tags advertised by the remote, served from the ref cache as long as the
+   * cached advertisement is not stale.
+   */
+  private Map<String, ObjectId> getRemoteRefs(String remoteName) throws GitAPIException {
+    Map<String, ObjectId> refs = this.remoteRefCache.get(remoteName);
+    if (refs == null) {
+      refs = queryRemoteRefs(remoteName);
+    }
+    return refs;
+  }
+
+  /**
+   * Queries the heads and tags of the remote, bypassing and refreshing the ref cache.
+   */
+  private Map<String, ObjectId> queryRemoteRefs(String remoteName) throws GitAPIException {
+    if (this.log.isLoggable(Level.FINE)) {
+      this.log.fine(LOG_PREFIX + "Querying refs of remote '" + remoteName + "'.");
+    }
+    Collection<Ref> advertisedRefs = this.transportPool.execute(this.git.getRepository(),
+        remoteName, Operation.FETCH, new TransportCallback<Collection<Ref>>() {
+
+          @Override
+          public Collection<Ref> run(Transport transport) throws IOException {
+            FetchConnection connection = transport.openFetch();
+            try {
+              return connection.getRefs();
+            } finally {
+              connection.close();
+            }
+          }
+        });
+    return this.remoteRefCache.put(remoteName, advertisedRefs);
+  }
 
-    command.setTransportConfigCallback(new TransportConfigCallback() {
+  /**
+   * Compares the remote-tracking ref of the branch with a fresh advertisement of the remote. A
+   * cached advertisement is only used to detect a change, since it may miss changes of third
+   * parties.
+   *
+   * @return the revision of the remote branch if the remote advertises the same revision as the
+   *         remote-tracking ref of the branch, {@code null} if the branch changed, is not tracked
+   *         or the remote cannot be queried.
+   */
+  private ObjectId getUnchangedRemoteRevision(String remoteName, String remoteBranchName) {
+    ObjectId trackingRevision = this.util.getRemoteTrackingRevision(remoteName, remoteBranchName);
+    if (trackingRevision == null) {
+      return null;
+    }
+    Map<String, ObjectId> cachedRefs = this.remoteRefCache.get(remoteName);
+    if (cachedRefs != null && !trackingRevision.equals(cachedRefs.get(remoteBranchName))) {
+      return null;
+    }
+    try {
+      ObjectId advertisedRevision = queryRemoteRefs(remoteName).get(remoteBranchName);
+      return trackingRevision.equals(advertisedRevision) ? trackingRevision : null;
+    } catch (GitAPIException e) {
+      // the fetch will report the problem
+      return null;
+    }
+  }
 
-      @Override
-      public void configure(Transport transport) {
-        if (isSshTransport(transport)) {
-          SshTransport sshTransport = (SshTransport) transport;
-          sshTransport.setSshSessionFactory(ScmProviderGit.this.sshSessionFactory);
+  /**
+   * @return the (first) merge base of the passed commits or {@code null} if their histories are
+   *         unrelated.
+   */
+  private RevCommit getMergeBase(ObjectId commitId1, ObjectId commitId2) throws IOException {
+    RevWalk walk = new RevWalk(this.git.getRepository());
+    try {
+      walk.setRevFilter(RevFilter.MERGE_BASE);
+      walk.markStart(walk.parseCommit(commitId1));
+      walk.markStart(walk.parseCommit(commitId2));
+      return walk.next();
+    } finally {
+      walk.close();
+    }
+  }
+
+  /**
+   * Moves HEAD forward to a descendant commit like a fast-forward merge does, but without setting
+   * up the merge machinery. Only the paths that differ between both commits are checked out, the
+   * checkout fails if they conflict with local changes.
+   */
+  private void fastForward(ObjectId headId, ObjectId commitId, String revisionName)
+      throws GitAPIException, IOException {
+    Repository repository = this.git.getRepository();
+    RevWalk walk = new RevWalk(repository);
+    try {
+      RevTree headTree = walk.parseCommit(headId).getTree();
+      RevTree tree = walk.parseCommit(commitId).getTree();
+      // the checkout releases the lock of the index
+      DirCacheCheckout checkout =
+          new DirCacheCheckout(repository, headTree, repository.lockDirCache(), tree);
+      checkout.setFailOnConflict(true);
+      checkout.checkout();
+    } finally {
+      walk.close();
+    }
+
+    RefUpdate refUpdate = repository.updateRef(Constants.HEAD);
+    refUpdate.setNewObjectId(commitId);
+    refUpdate.setExpectedOldObjectId(headId);
+    refUpdate.setRefLogMessage("merge " + revisionName + ": Fast-forward", false);
+    RefUpdate.Result result = refUpdate.update();
+    switch (result) {
+      case FAST_FORWARD:
+        break;
+      case REJECTED:
+      case LOCK_FAILURE:
+        throw new ConcurrentRefUpdateException("Could not lock HEAD.", refUpdate.getRef(), result);
+      default:
+        throw new JGitInternalException("Updating the ref " + Constants.HEAD + " to "
+            + commitId.getName() + " failed. ReturnCode from RefUpdate.update() was " + result);
+    }
+  }
+
+  private MergeCommand createMergeCommand(UpdateRequest request) {
+    MergeCommand merge =
+        this.git.merge().setFastForward(FastForwardMode.FF).setCommit(true).setMessage("Merge");
+    switch (request.getMergeStrategy()) {
+      case USE_LOCAL:
+        merge.setStrategy(MergeStrategy.OURS);
+        break;
+      case USE_REMOTE:
+        merge.setStrategy(MergeStrategy.THEIRS);
+        break;
+      case FULL_MERGE:
+        merge.setStrategy(new UnleashGitFullMergeStrategy(request.getMergeClient().get(),
+            this.settings.getPackInsertThreshold()));
+        break;
+      case DO_NOT_MERGE:
+        // nothing to do here!
+        break;
+      default:
+        throw new UnsupportedOperationException(
+            "Unknown merge strategy! API and implementation versions are incompatible!");
+    }
+    return merge;
+  }
+
+  /**
+   * Computes the refspecs of a narrowed update fetch: the upstream branch of the current branch
+   * mapped to its remote-tracking ref and the requested tag if the cached advertisement of the
+   * remote contains a tag with the name of the requested revision.
+   *
+   * @return the refspecs or {@code null} if the upstream branch is not covered by the fetch
+   *         refspecs of the remote and all refs have to be fetched.
+   */
+  private List<RefSpec> getNarrowFetchRefSpecs(String remoteName, String remoteBranchName,
+      Optional<String> targetRevision) {
+    RefSpec branchSpec = this.util.getTrackingRefSpec(remoteName, remoteBranchName);
+    if (branchSpec == null) {
+      return null;
+    }
+    List<RefSpec> refSpecs = Lists.newArrayList(branchSpec);
+    if (targetRevision.isPresent()) {
+      String tagName = GitUtil.TAG_NAME_PREFIX + targetRevision.get();
+      Map<String, ObjectId> cachedRefs = this.remoteRefCache.get(remoteName);
+      if (cachedRefs != null && cachedRefs.containsKey(tagName)) {
+        refSpecs.add(new RefSpec(tagName + ":" + tagName));
+      }
+    }
+    return refSpecs;
+  }
+
+  /**
+   * Fetches from the remote using the fetch refspecs configured for the remote. The ref
+   * advertisement received during the fetch refreshes the remote ref cache.
+   */
+  private FetchResult fetchRefs(String remoteName, TagOpt tagOpt, boolean removeDeletedRefs)
+      throws GitAPIException {
+    return fetchRefs(remoteName, tagOpt, removeDeletedRefs, null);
+  }
+
+  /**
+   * Fetches the passed refspecs from the remote or the configured fetch refspecs if {@code null}
+   * is passed. The ref advertisement received during the fetch refreshes the remote ref cache.
+   */
+  private FetchResult fetchRefs(String remoteName, final TagOpt tagOpt,
+      final boolean removeDeletedRefs, final Collection<RefSpec> refSpecs) throws GitAPIException {
+    FetchResult result = this.transportPool.execute(this.git.getRepository(), remoteName,
+        Operation.FETCH, new TransportCallback<FetchResult>() {
+
+          @Override
+          public FetchResult run(Transport transport) throws IOException {
+            transport.setTagOpt(tagOpt);
+            transport.setRemoveDeletedRefs(removeDeletedRefs);
+            return transport.fetch(NullProgressMonitor.INSTANCE, refSpecs);
+          }
+        });
+    this.remoteRefCache.put(remoteName, result.getAdvertisedRefs());
+    return result;
+  }
+
+  /**
+   * Pushes the passed refspecs to all push URIs of the remote and patches the results into the
+   * remote ref cache.
+   *
+   * @return the results of the pushes, one per push URI.
+   */
+  private List<PushResult> pushRefs(String remoteName, Collection<RefSpec> refSpecs)
+      throws GitAPIException {
+    return pushRefs(remoteName, refSpecs, false);
+  }
+
+  /**
+   * Pushes the passed refspecs to all push URIs of the remote and patches the results into the
+   * remote ref cache.
+   *
+   * @param atomic whether all refs shall be updated in one transaction. If the remote does not
+   *          support atomic pushes, the refs are pushed non-atomically.
+   * @return the results of the pushes, one per push URI.
+   */
+  private List<PushResult> pushRefs(final String remoteName, final Collection<RefSpec> refSpecs,
+      final boolean atomic) throws GitAPIException {
+    List<PushResult> results = this.transportPool.executeAll(this.git.getRepository(),
+        remoteName, Operation.PUSH, new TransportCallback<PushResult>() {
+
+          @Override
+          public PushResult run(Transport transport) throws IOException {
+            if (atomic && !ScmProviderGit.this.nonAtomicRemotes.contains(remoteName)) {
+              transport.setPushAtomic(true);
+              try {
+                return transport.push(NullProgressMonitor.INSTANCE,
+                    transport.findRemoteRefUpdatesFor(refSpecs));
+              } catch (TransportException e) {
+                // the capability is checked before any ref update is sent
+                String message = e.getMessage();
+                if (message == null
+                    || !message.endsWith(JGitText.get().atomicPushNotSupported)) {
+                  throw e;
+                }
+                if (ScmProviderGit.this.log.isLoggable(Level.FINE)) {
+                  ScmProviderGit.this.log.fine(LOG_PREFIX + "Remote '" + remoteName
+                      + "' does not support atomic pushes, pushing non-atomically.");
+                }
+                ScmProviderGit.this.nonAtomicRemotes.add(remoteName);
+              }
+            }
+            transport.setPushAtomic(false);
+            return transport.push(NullProgressMonitor.INSTANCE,
+                transport.findRemoteRefUpdatesFor(refSpecs));
+          }
+        });
+    for (PushResult result : results) {
+      this.remoteRefCache.update(remoteName, result);
+    }
+    return results;
+  }
+
+  private boolean isSingleRefCheckout(CheckoutRequest request) {
+    return this.settings.isCheckoutSingleRef() && request.checkoutWholeRepository()
+        && (request.checkoutBranch() || request.checkoutTag());
+  }
+
+  /**
+   * Clones the remote repository by fetching into a freshly initialized repository which, in
+   * contrast to a regular clone, allows borrowing objects from a local mirror and cloning single
+   * refs.<br>
+   * <br>
+   * If a mirror cache is configured, the objects of the mirror of the remote are borrowed via
+   * {@code objects/info/alternates}, so only the objects the mirror lacks are fetched.<br>
+   * <br>
+   * If a single ref checkout is requested, only the requested branch or tag (and the tags pointing
+   * into its history) is fetched instead of all branches and tags. For a branch the remote is
+   * configured to track this branch only, just like {@code git clone --single-branch} does. The
+   * remaining refs are fetched by {@link #fetchMissingRefs(Collection, Collection)} once an
+   * operation needs them. If the remote does not know the requested ref, all branches are fetched
+   * as a regular clone would do.<br>
+   * <br>
+   * Nothing is checked out, HEAD is left unborn.
+   *
+   * @return the name of the default branch of the remote if all branches have been fetched,
+   *         {@code null} otherwise.
+   */
+  private String cloneByFetch(CheckoutRequest request) throws GitAPIException, IOException {
+    Repository repository = Git.init().setDirectory(this.workingDir).call().getRepository();
+    try {
+      if (this.mirrorCache != null) {
+        File mirror = this.mirrorCache.getMirror(request.getRemoteRepositoryUrl(),
+            repository.getDirectory());
+        if (mirror != null && this.log.isLoggable(Level.FINE)) {
+          this.log.fine(LOG_PREFIX + "Borrowing objects from local mirror '"
+              + mirror.getAbsolutePath() + "'.");
         }
       }
+    } finally {
+      repository.close();
+    }
+    // reopen the repository to let it pick up the alternates
+    this.git = Git.open(this.workingDir);
+    this.util = new GitUtil(this.git, null, this.settings);
 
-      private boolean isSshTransport(Transport transport) {
-        return transport instanceof SshTransport;
+    String remoteName = Constants.DEFAULT_REMOTE_NAME;
+    StoredConfig config = this.git.getRepository().getConfig();
+    RemoteConfig remoteConfig;
+    try {
+      remoteConfig = new RemoteConfig(config, remoteName);
+      remoteConfig.addURI(new URIish(request.getRemoteRepositoryUrl()));
+    } catch (URISyntaxException e) {
+      throw new InvalidRemoteException("Invalid remote: " + request.getRemoteRepositoryUrl(), e);
+    }
+    remoteConfig.update(config);
+    config.save();
+
+    String refName = null;
+    if (isSingleRefCheckout(request)) {
+      refName = request.checkoutBranch() ? Constants.R_HEADS + request.getBranch().get()
+          : Constants.R_TAGS + request.getTag().get();
+    }
+    if (refName == null || !getRemoteRefs(remoteName).containsKey(refName)) {
+      remoteConfig.addFetchRefSpec(getDefaultFetchRefSpec(remoteName));
+      remoteConfig.update(config);
+      config.save();
+      FetchResult result = fetchRefs(remoteName, TagOpt.FETCH_TAGS, false);
+      return getDefaultBranchName(result);
+    }
+
+    if (this.log.isLoggable(Level.FINE)) {
+      this.log.fine(LOG_PREFIX + "Cloning '" + refName + "' only.");
+    }
+    RefSpec refSpec;
+    if (request.checkoutBranch()) {
+      refSpec = new RefSpec().setForceUpdate(true).setSourceDestination(refName,
+          Constants.R_REMOTES + remoteName + "/" + request.getBranch().get());
+      remoteConfig.addFetchRefSpec(refSpec);
+    } else {
+      refSpec = new RefSpec().setForceUpdate(true).setSourceDestination(refName, refName);
+      remoteConfig.addFetchRefSpec(getDefaultFetchRefSpec(remoteName));
+    }
+    remoteConfig.update(config);
+    config.setBoolean(CONFIG_SECTION_UNLEASH, null, CONFIG_KEY_SINGLE_REF, true);
+    config.save();
+    fetchRefs(remoteName, TagOpt.AUTO_FOLLOW, false, Lists.newArrayList(refSpec));
+    return null;
+  }
+
+  /**
+   * @return the name of the branch the remote HEAD points to or {@code null} if it cannot be
+   *         determined.
+   */
+  private String getDefaultBranchName(FetchResult result) {
+    Ref head = result.getAdvertisedRef(Constants.HEAD);
+    if (head == null || head.getObjectId() == null) {
+      return null;
+    }
+
+    String branchName = null;
+    for (Ref ref : result.getAdvertisedRefs()) {
+      if (ref.getName().startsWith(Constants.R_HEADS)
+          && Objects.equal(head.getObjectId(), ref.getObjectId())) {
+        branchName = ref.getName().substring(Constants.R_HEADS.length());
+        if (Objects.equal(Constants.MASTER, branchName)) {
+          break;
+        }
       }
-    });
+    }
+    return branchName;
+  }
+
+  /**
+   * Checks out the default branch of the remote if the repository has been cloned by
+   * {@link #cloneByFetch(CheckoutRequest)} and nothing has been checked out yet.
+   */
+  private void checkoutDefaultBranch(String branchName) throws ScmException {
+    if (branchName == null) {
+      return;
+    }
+    try {
+      if (isHeadUnborn()) {
+        checkoutNewBranch(this.git.branchCreate().setName(branchName)
+            .setStartPoint(Constants.DEFAULT_REMOTE_NAME + "/" + branchName));
+      }
+    } catch (Exception e) {
+      throw new ScmException(ScmOperation.CHECKOUT, "Unable to checkout default branch '"
+          + branchName + "' into local working directory '" + this.workingDir.getAbsolutePath()
+          + "'.", e);
+    }
+  }
+
+  private boolean isHeadUnborn() throws IOException {
+    return this.git.getRepository().resolve(Constants.HEAD) == null;
+  }
+
+  /**
+   * Creates a local branch, points HEAD to it and writes its files into the (empty) working tree.
+   */
+  private void checkoutNewBranch(CreateBranchCommand createBranch)
+      throws GitAPIException, IOException {
+    Ref branch = createBranch.setUpstreamMode(SetupUpstreamMode.SET_UPSTREAM).call();
+    RefUpdate update = this.git.getRepository().updateRef(Constants.HEAD);
+    checkHeadUpdate(update, update.link(branch.getName()), branch.getName());
+    materialize(branch.getObjectId(), null);
+  }
+
+  /**
+   * Detaches HEAD at the passed revision and writes its files into the (empty) working tree.
+   */
+  private void checkoutDetached(String revision) throws GitAPIException, IOException {
+    Repository repository = this.git.getRepository();
+    ObjectId id = repository.resolve(revision);
+    if (id == null) {
+      throw new IOException("Unable to resolve revision '" + revision + "'.");
+    }
+    RevWalk walk = new RevWalk(repository);
+    RevCommit commit;
+    try {
+      commit = walk.parseCommit(id);
+    } finally {
+      walk.close();
+    }
+    RefUpdate update = repository.updateRef(Constants.HEAD, true);
+    update.setNewObjectId(commit);
+    checkHeadUpdate(update, update.forceUpdate(), commit.getName());
+    materialize(commit, null);
+  }
 
+  /**
+   * Checks the result of pointing the unborn HEAD of a fresh clone to a branch or commit.
+   */
+  private void checkHeadUpdate(RefUpdate update, RefUpdate.Result result, String target)
+      throws ConcurrentRefUpdateException {
+    switch (result) {
+      case NEW:
+      case FORCED:
+      case NO_CHANGE:
+        break;
+      case REJECTED:
+      case LOCK_FAILURE:
+        throw new ConcurrentRefUpdateException("Could not lock HEAD.", update.getRef(), result);
+      default:
+        throw new JGitInternalException("Updating the ref " + Constants.HEAD + " to " + target
+            + " failed. ReturnCode from RefUpdate.update() was " + result);
+    }
+  }
+
+  /**
+   * Writes the files of the passed commit into the working tree using the parallel checkout.
+   *
+   * @param paths the paths to check out or {@code null} for all files.
+   */
+  private void materialize(ObjectId commitId, Collection<String> paths) throws IOException {
+    Repository repository = this.git.getRepository();
+    RevWalk walk = new RevWalk(repository);
+    try {
+      RevCommit commit = walk.parseCommit(commitId);
+      new ParallelCheckout(repository, this.settings.getCheckoutThreads(), this.log)
+          .checkout(commit.getTree(), paths);
+    } finally {
+      walk.close();
+    }
+  }
+
+  /**
+   * Fetches all branches and tags if the local repository is a single ref clone and does not
+   * contain all of the passed tags and revisions. Afterwards the remote is configured to track all
+   * branches again.
+   */
+  private void fetchMissingRefs(Collection<String> tagNames, Collection<String> revisions)
+      throws GitAPIException, IOException {
+    Repository repository = this.git.getRepository();
+    StoredConfig config = repository.getConfig();
+    if (!config.getBoolean(CONFIG_SECTION_UNLEASH, null, CONFIG_KEY_SINGLE_REF, false)) {
+      return;
+    }
+
+    boolean complete = true;
+    for (String tagName : tagNames) {
+      complete &= this.util.hasLocalTag(tagName);
+    }
+    for (String revision : revisions) {
+      ObjectId id = repository.resolve(revision);
+      complete &= id != null && repository.hasObject(id);
+    }
+    if (complete) {
+      return;
+    }
+
+    String remoteName = this.util.getRemoteName(this.util.getCurrentBranchName());
+    if (this.log.isLoggable(Level.FINE)) {
+      this.log.fine(LOG_PREFIX + "Fetching all branches and tags of remote '" + remoteName
+          + "' since the single ref clone lacks some of the requested tags or revisions.");
+    }
+    RemoteConfig remoteConfig;
+    try {
+      remoteConfig = new RemoteConfig(config, remoteName);
+    } catch (URISyntaxException e) {
+      throw new InvalidRemoteException("Invalid remote: " + remoteName, e);
+    }
+    remoteConfig.setFetchRefSpecs(Lists.newArrayList(getDefaultFetchRefSpec(remoteName)));
+    remoteConfig.update(config);
+    config.unset(CONFIG_SECTION_UNLEASH, null, CONFIG_KEY_SINGLE_REF);
+    config.save();
+    fetchRefs(remoteName, TagOpt.FETCH_TAGS, false);
+  }
+
+  private RefSpec getDefaultFetchRefSpec(String remoteName) {
+    return new RefSpec().setForceUpdate(true).setSourceDestination(Constants.R_HEADS + "*",
+        Constants.R_REMOTES + remoteName + "/*");
+  }
+
+  private void setAuthenticationDetails(TransportCommand<?, ?> command) {
+    command.setCredentialsProvider(this.credentialsProvider);
+    command.setTransportConfigCallback(this.transportConfigCallback);
   }
 }
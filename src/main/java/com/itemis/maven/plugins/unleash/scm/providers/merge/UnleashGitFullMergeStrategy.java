@@ -10,10 +10,20 @@ import com.itemis.maven.plugins.unleash.scm.merge.MergeClient;
 
 public class UnleashGitFullMergeStrategy extends MergeStrategy {
   private MergeClient mergeClient;
+  private int packInsertThreshold;
 
   public UnleashGitFullMergeStrategy(MergeClient mergeClient) {
+    this(mergeClient, 0);
+  }
+
+  /**
+   * @param packInsertThreshold the number of merged objects from which on the objects are written into a pack, values
+   *          below {@code 1} always write loose objects.
+   */
+  public UnleashGitFullMergeStrategy(MergeClient mergeClient, int packInsertThreshold) {
     super();
     this.mergeClient = mergeClient;
+    this.packInsertThreshold = packInsertThreshold;
   }
 
   @Override
@@ -23,12 +33,12 @@ public class UnleashGitFullMergeStrategy extends MergeStrategy {
 
   @Override
   public Merger newMerger(Repository db) {
-    return new UnleashGitMerger(db, this.mergeClient);
+    return new UnleashGitMerger(db, false, this.mergeClient, this.packInsertThreshold);
   }
 
   @Override
   public Merger newMerger(Repository db, boolean inCore) {
-    return new UnleashGitMerger(db, inCore, this.mergeClient);
+    return new UnleashGitMerger(db, inCore, this.mergeClient, this.packInsertThreshold);
   }
 
   @Override
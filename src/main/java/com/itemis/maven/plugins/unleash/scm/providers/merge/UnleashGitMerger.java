@@ -103,6 +103,7 @@ import org.eclipse.jgit.util.TemporaryBuffer;
 import com.google.common.io.Closeables;
 import com.itemis.maven.plugins.unleash.scm.merge.MergeClient;
 import com.itemis.maven.plugins.unleash.scm.providers.ScmProviderGit;
+import com.itemis.maven.plugins.unleash.scm.providers.util.PackingObjectInserter;
 
 /**
  * This is a copy of the {@link ResolveMerger} class and is meant as a temporary solution until the
@@ -279,7 +280,20 @@ public class UnleashGitMerger extends ResolveMerger {
    * @param inCore
    */
   protected UnleashGitMerger(Repository local, boolean inCore, MergeClient mergeClient) {
+    this(local, inCore, mergeClient, 0);
+  }
+
+  /**
+   * @param local
+   * @param inCore
+   * @param packInsertThreshold the number of merged objects from which on the objects are written into a pack, values
+   *          below {@code 1} always write loose objects.
+   */
+  protected UnleashGitMerger(Repository local, boolean inCore, MergeClient mergeClient, int packInsertThreshold) {
     super(local);
+    if (packInsertThreshold > 0) {
+      setObjectInserter(PackingObjectInserter.create(local, 0, packInsertThreshold));
+    }
     this.mergeClient = mergeClient;
     SupportedAlgorithm diffAlg = local.getConfig().getEnum(ConfigConstants.CONFIG_DIFF_SECTION, null,
         ConfigConstants.CONFIG_KEY_ALGORITHM, SupportedAlgorithm.HISTOGRAM);
@@ -0,0 +1,237 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import java.io.File;
+
+/**
+ * Tuning options of the Git SCM provider. Since the provider API does not offer a way to pass provider specific
+ * configuration, all options are read from system properties prefixed with {@code unleash.git.}.
+ */
+public class GitSettings {
+  static final String PREFIX = "unleash.git.";
+
+  /**
+   * Maximum age in milliseconds of a cached remote ref advertisement. {@code 0} disables the cache, a negative value
+   * keeps the advertisement for the whole provider lifetime.
+   */
+  public static final String REF_CACHE_MAX_AGE = PREFIX + "refCache.maxAge";
+
+  /**
+   * Time in milliseconds a connection to a remote may stay unused before it is closed. {@code 0} closes connections
+   * right after each remote operation, a negative value keeps them open until the provider is closed.
+   */
+  public static final String TRANSPORT_IDLE_TIMEOUT = PREFIX + "transport.idleTimeout";
+
+  /**
+   * If {@code true} a checkout of a branch or tag clones only the requested ref instead of all branches and tags. The
+   * remaining refs are fetched as soon as an operation needs them.
+   */
+  public static final String CHECKOUT_SINGLE_REF = PREFIX + "checkout.singleRef";
+
+  /**
+   * Directory holding local mirrors of the remote repositories. Checkouts borrow the objects of the mirrors and fetch
+   * only what the mirrors lack. If not set, no mirrors are used.
+   */
+  public static final String MIRROR_CACHE_DIR = PREFIX + "mirrorCache.dir";
+
+  /**
+   * Maximum size in bytes of all mirrors. Least recently used mirrors are evicted once the limit is exceeded, a negative
+   * value disables the eviction. Mirrors whose objects are still borrowed by existing working copies are never
+   * evicted.
+   */
+  public static final String MIRROR_CACHE_MAX_SIZE = PREFIX + "mirrorCache.maxSize";
+
+  /**
+   * Time in milliseconds after which a mirror is refreshed in the background when it is used. A negative value disables
+   * the refresh.
+   */
+  public static final String MIRROR_CACHE_REFRESH_INTERVAL = PREFIX + "mirrorCache.refreshInterval";
+
+  /**
+   * Number of threads writing the files of a checkout. Values above {@code 1} replace the regular clone by a fetch into
+   * a fresh repository followed by a parallel checkout. Values below {@code 2} (the default) write all files on the
+   * calling thread.
+   */
+  public static final String CHECKOUT_THREADS = PREFIX + "checkout.threads";
+
+  /**
+   * Number of threads hashing the files whose stat data is inconclusive during status computations. Values below
+   * {@code 2} hash all files on the calling thread.
+   */
+  public static final String STATUS_THREADS = PREFIX + "status.threads";
+
+  /**
+   * If {@code true} the working tree is watched for changes from the initialization of the provider on, so that status
+   * computations only need to look at the changed paths instead of scanning the whole working tree.
+   */
+  public static final String WATCH_WORK_TREE = PREFIX + "watchWorkTree";
+
+  /**
+   * If {@code true} status computations take the untracked files from a cache in the git directory that only re-reads
+   * directories whose modification time changed.
+   */
+  public static final String UNTRACKED_CACHE = PREFIX + "untrackedCache";
+
+  /**
+   * Number of new objects (blobs, trees and commits) of one commit or merge from which on the objects are written into
+   * a pack instead of loose objects. Values below {@code 1} always write loose objects.
+   */
+  public static final String PACK_INSERT_THRESHOLD = PREFIX + "packInsert.threshold";
+
+  /**
+   * If {@code true} a push sends only the current branch and the refs created or deleted by the provider instead of all
+   * local branches and tags. The refs are updated atomically if the remote supports atomic pushes.
+   */
+  public static final String PUSH_TARGETED = PREFIX + "push.targeted";
+
+  /**
+   * If {@code true} the remote revision after pushes and ref operations is taken from the push result and the remote
+   * tracking refs instead of querying the remote again, and checkouts clone by fetching so that the ref advertisement
+   * of the clone answers the subsequent branch and tag queries.
+   */
+  public static final String MINIMIZE_ROUND_TRIPS = PREFIX + "minimizeRoundTrips";
+
+  /**
+   * If {@code true} updates fetch only the upstream branch of the current branch (and the requested tag, if any)
+   * instead of all branches and tags of the remote, deleted remote branches are not pruned. If the requested revision
+   * cannot be resolved afterwards, all refs are fetched.
+   */
+  public static final String UPDATE_NARROW_FETCH = PREFIX + "update.narrowFetch";
+
+  /**
+   * If {@code true} the repository of the working copy is garbage collected (refs packed, objects repacked with a
+   * reachability bitmap, old unreachable objects pruned) when the provider is initialized and one of the thresholds
+   * below is reached.
+   */
+  public static final String GC_ENABLED = PREFIX + "gc.enabled";
+
+  /**
+   * Estimated number of loose objects from which on the repository is garbage collected. Values below {@code 1}
+   * disable this trigger.
+   */
+  public static final String GC_LOOSE_OBJECTS = PREFIX + "gc.looseObjects";
+
+  /**
+   * Number of packs from which on the repository is garbage collected. Values below {@code 1} disable this trigger.
+   */
+  public static final String GC_PACKS = PREFIX + "gc.packs";
+
+  private long refCacheMaxAge = 60000;
+  private long transportIdleTimeout = 120000;
+  private boolean checkoutSingleRef = false;
+  private int checkoutThreads = 1;
+  private int statusThreads = Runtime.getRuntime().availableProcessors();
+  private File mirrorCacheDir = null;
+  private boolean watchWorkTree = false;
+  private boolean untrackedCache = false;
+  private int packInsertThreshold = 100;
+  private boolean pushTargeted = false;
+  private boolean minimizeRoundTrips = false;
+  private boolean updateNarrowFetch = false;
+  private boolean gcEnabled = false;
+  private int gcLooseObjects = 6700;
+  private int gcPacks = 50;
+  private long mirrorCacheMaxSize = 10L * 1024 * 1024 * 1024;
+  private long mirrorCacheRefreshInterval = 300000;
+
+  public static GitSettings fromSystemProperties() {
+    GitSettings settings = new GitSettings();
+    settings.refCacheMaxAge = Long.getLong(REF_CACHE_MAX_AGE, settings.refCacheMaxAge);
+    settings.transportIdleTimeout = Long.getLong(TRANSPORT_IDLE_TIMEOUT, settings.transportIdleTimeout);
+    settings.checkoutSingleRef = getBoolean(CHECKOUT_SINGLE_REF, settings.checkoutSingleRef);
+    settings.checkoutThreads = Integer.getInteger(CHECKOUT_THREADS, settings.checkoutThreads);
+    settings.statusThreads = Integer.getInteger(STATUS_THREADS, settings.statusThreads);
+    String mirrorCacheDir = System.getProperty(MIRROR_CACHE_DIR);
+    if (mirrorCacheDir != null && !mirrorCacheDir.trim().isEmpty()) {
+      settings.mirrorCacheDir = new File(mirrorCacheDir.trim());
+    }
+    settings.mirrorCacheMaxSize = Long.getLong(MIRROR_CACHE_MAX_SIZE, settings.mirrorCacheMaxSize);
+    settings.mirrorCacheRefreshInterval = Long.getLong(MIRROR_CACHE_REFRESH_INTERVAL,
+        settings.mirrorCacheRefreshInterval);
+    settings.watchWorkTree = getBoolean(WATCH_WORK_TREE, settings.watchWorkTree);
+    settings.untrackedCache = getBoolean(UNTRACKED_CACHE, settings.untrackedCache);
+    settings.packInsertThreshold = Integer.getInteger(PACK_INSERT_THRESHOLD, settings.packInsertThreshold);
+    settings.pushTargeted = getBoolean(PUSH_TARGETED, settings.pushTargeted);
+    settings.minimizeRoundTrips = getBoolean(MINIMIZE_ROUND_TRIPS, settings.minimizeRoundTrips);
+    settings.updateNarrowFetch = getBoolean(UPDATE_NARROW_FETCH, settings.updateNarrowFetch);
+    settings.gcEnabled = getBoolean(GC_ENABLED, settings.gcEnabled);
+    settings.gcLooseObjects = Integer.getInteger(GC_LOOSE_OBJECTS, settings.gcLooseObjects);
+    settings.gcPacks = Integer.getInteger(GC_PACKS, settings.gcPacks);
+    return settings;
+  }
+
+  private static boolean getBoolean(String key, boolean defaultValue) {
+    String value = System.getProperty(key);
+    return value != null ? Boolean.parseBoolean(value) : defaultValue;
+  }
+
+  public long getRefCacheMaxAge() {
+    return this.refCacheMaxAge;
+  }
+
+  public long getTransportIdleTimeout() {
+    return this.transportIdleTimeout;
+  }
+
+  public boolean isCheckoutSingleRef() {
+    return this.checkoutSingleRef;
+  }
+
+  public int getCheckoutThreads() {
+    return this.checkoutThreads;
+  }
+
+  public int getStatusThreads() {
+    return this.statusThreads;
+  }
+
+  /**
+   * @return the directory of the mirror cache or {@code null} if no mirrors shall be used.
+   */
+  public File getMirrorCacheDir() {
+    return this.mirrorCacheDir;
+  }
+
+  public long getMirrorCacheMaxSize() {
+    return this.mirrorCacheMaxSize;
+  }
+
+  public long getMirrorCacheRefreshInterval() {
+    return this.mirrorCacheRefreshInterval;
+  }
+
+  public boolean isWatchWorkTree() {
+    return this.watchWorkTree;
+  }
+
+  public boolean isUntrackedCache() {
+    return this.untrackedCache;
+  }
+
+  public int getPackInsertThreshold() {
+    return this.packInsertThreshold;
+  }
+
+  public boolean isPushTargeted() {
+    return this.pushTargeted;
+  }
+
+  public boolean isMinimizeRoundTrips() {
+    return this.minimizeRoundTrips;
+  }
+
+  public boolean isUpdateNarrowFetch() {
+    return this.updateNarrowFetch;
+  }
+
+  public boolean isGcEnabled() {
+    return this.gcEnabled;
+  }
+
+  public int getGcLooseObjects() {
+    return this.gcLooseObjects;
+  }
+
+  public int getGcPacks() {
+    return this.gcPacks;
+  }
+}
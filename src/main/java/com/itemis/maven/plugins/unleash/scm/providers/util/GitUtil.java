@@ -1,25 +1,43 @@
 package com.itemis.maven.plugins.unleash.scm.providers.util;
 
 import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand.ListMode;
 import org.eclipse.jgit.api.LogCommand;
-import org.eclipse.jgit.api.StatusCommand;
+import org.eclipse.jgit.api.Status;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheIterator;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.IndexDiff;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.NotTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.itemis.maven.plugins.unleash.scm.ScmException;
 import com.itemis.maven.plugins.unleash.scm.ScmOperation;
 
@@ -27,31 +45,188 @@ public class GitUtil {
   public static final String TAG_NAME_PREFIX = "refs/tags/";
   public static final String HEADS_NAME_PREFIX = "refs/heads/";
 
+  private static final TreeFilter TRACKED_PATHS = new TrackedPathsFilter();
+
   private Git git;
+  private WorkTreeWatcher watcher;
+  private int statusThreads;
+  private UntrackedCache untrackedCache;
 
   public GitUtil(Git git) {
     this.git = git;
   }
 
+  /**
+   * @param watcher a watcher of the working tree that is used to restrict status computations to the paths that may be
+   *          dirty or {@code null} if the working tree is not watched.
+   * @param settings the settings controlling how status computations are performed.
+   */
+  public GitUtil(Git git, WorkTreeWatcher watcher, GitSettings settings) {
+    this.git = git;
+    this.watcher = watcher;
+    this.statusThreads = settings.getStatusThreads();
+    if (settings.isUntrackedCache() && !git.getRepository().isBare()) {
+      this.untrackedCache = new UntrackedCache(git.getRepository());
+    }
+  }
+
   public boolean isDirty(Set<String> paths) throws ScmException {
+    return !getStatus(paths).isClean();
+  }
+
+  public Set<String> getUncommittedChangedPaths() throws ScmException {
+    return getStatus(Collections.<String> emptySet()).getUncommittedChanges();
+  }
+
+  /**
+   * Computes a snapshot of the status of the working tree. Operations needing the status several times should compute
+   * it once and share the snapshot since each computation scans the whole working tree.
+   *
+   * @param paths the paths to restrict the status to or an empty collection for the status of the whole working tree.
+   */
+  public Status getStatus(Collection<String> paths) throws ScmException {
     try {
-      StatusCommand status = this.git.status();
-      for (String path : paths) {
-        status.addPath(path);
+      if (this.watcher != null) {
+        Status status = getStatusFromWatcher(paths);
+        if (status != null) {
+          return status;
+        }
       }
-      return !status.call().isClean();
-    } catch (GitAPIException e) {
+
+      return computeStatus(paths);
+    } catch (IOException e) {
       throw new ScmException(ScmOperation.INFO, "Could not evaluate the status of the local repository.", e);
     }
   }
 
-  public Set<String> getUncommittedChangedPaths() throws ScmException {
+  /**
+   * Computes the status restricted to the paths the watcher reports as possibly dirty, taking a new baseline with a
+   * full scan if the watcher cannot provide the paths.
+   *
+   * @return the status or {@code null} if the watcher cannot be used at all.
+   */
+  private Status getStatusFromWatcher(Collection<String> paths) throws IOException {
+    Repository repository = this.git.getRepository();
+    Set<String> candidates = this.watcher.getCandidatePaths();
+    if (candidates == null) {
+      this.watcher.beginFullScan();
+      ObjectId head = repository.resolve(Constants.HEAD);
+      Status status = computeStatus(Collections.<String> emptySet());
+      Set<String> dirtyPaths = Sets.newHashSet(status.getUncommittedChanges());
+      dirtyPaths.addAll(status.getUntracked());
+      this.watcher.setBaseline(dirtyPaths, head);
+      if (paths.isEmpty()) {
+        return status;
+      }
+      candidates = this.watcher.getCandidatePaths();
+      if (candidates == null) {
+        return null;
+      }
+    }
+
+    // paths whose index or HEAD state changed without touching the working tree
+    ObjectId head = repository.resolve(Constants.HEAD);
+    ObjectId baselineHead = this.watcher.getBaselineHead();
+    if (head != null && baselineHead != null && !head.equals(baselineHead)) {
+      ObjectReader reader = repository.newObjectReader();
+      RevWalk revWalk = new RevWalk(reader);
+      try {
+        CanonicalTreeParser baselineTree = new CanonicalTreeParser();
+        baselineTree.reset(reader, revWalk.parseTree(baselineHead));
+        candidates.addAll(getChangedPaths(baselineTree, head));
+      } finally {
+        revWalk.close();
+        reader.close();
+      }
+    }
+    DirCache index = repository.readDirCache();
+    if (head != null) {
+      candidates.addAll(getChangedPaths(new DirCacheIterator(index), head));
+    } else {
+      // with an unborn HEAD every index entry is an added file
+      for (int i = 0; i < index.getEntryCount(); i++) {
+        candidates.add(index.getEntry(i).getPathString());
+      }
+    }
+
+    TreeFilter filter;
+    PrehashedTreeIterator workingTreeIterator;
+    if (candidates.isEmpty()) {
+      filter = NotTreeFilter.create(TreeFilter.ALL);
+      workingTreeIterator = PrehashedTreeIterator.create(repository, null, 0);
+    } else {
+      filter = PathFilterGroup.createFromStrings(candidates);
+      if (!paths.isEmpty()) {
+        filter = AndTreeFilter.create(PathFilterGroup.createFromStrings(paths), filter);
+      }
+      workingTreeIterator = createWorkingTreeIterator(candidates);
+    }
+    IndexDiff diff = new IndexDiff(repository, Constants.HEAD, workingTreeIterator);
+    diff.setFilter(filter);
+    diff.diff();
+    workingTreeIterator.writeRefreshedStatData();
+    return new Status(diff);
+  }
+
+  /**
+   * Computes the status of the passed paths by walking the working tree. If the untracked cache is enabled, the walk
+   * only visits tracked paths and the untracked files are taken from the cache.
+   */
+  private Status computeStatus(Collection<String> paths) throws IOException {
+    Repository repository = this.git.getRepository();
+    PrehashedTreeIterator workingTreeIterator = createWorkingTreeIterator(paths);
+    TreeFilter filter = paths.isEmpty() ? null : PathFilterGroup.createFromStrings(paths);
+    IndexDiff diff;
+    if (this.untrackedCache != null) {
+      final UntrackedCache.Result untracked = this.untrackedCache.scan(repository.readDirCache(), paths);
+      diff = new IndexDiff(repository, Constants.HEAD, workingTreeIterator) {
+
+        @Override
+        public Set<String> getUntracked() {
+          return untracked.getUntrackedFiles();
+        }
+
+        @Override
+        public Set<String> getUntrackedFolders() {
+          return untracked.getUntrackedFolders();
+        }
+      };
+      filter = filter != null ? AndTreeFilter.create(filter, TRACKED_PATHS) : TRACKED_PATHS;
+    } else {
+      diff = new IndexDiff(repository, Constants.HEAD, workingTreeIterator);
+    }
+    if (filter != null) {
+      diff.setFilter(filter);
+    }
+    diff.diff();
+    workingTreeIterator.writeRefreshedStatData();
+    return new Status(diff);
+  }
+
+  private PrehashedTreeIterator createWorkingTreeIterator(Collection<String> paths) throws IOException {
+    return PrehashedTreeIterator.create(this.git.getRepository(), paths, this.statusThreads);
+  }
+
+  private Set<String> getChangedPaths(AbstractTreeIterator base, ObjectId head) throws IOException {
+    Set<String> changedPaths = Sets.newHashSet();
+    TreeWalk walk = new TreeWalk(this.git.getRepository());
     try {
-      StatusCommand status = this.git.status();
-      return status.call().getUncommittedChanges();
-    } catch (GitAPIException e) {
-      throw new ScmException(ScmOperation.INFO, "Could not evaluate the status of the local repository.", e);
+      walk.addTree(base);
+      RevWalk revWalk = new RevWalk(walk.getObjectReader());
+      try {
+        walk.addTree(revWalk.parseTree(head));
+      } finally {
+        revWalk.close();
+      }
+      walk.setRecursive(true);
+      walk.setFilter(TreeFilter.ANY_DIFF);
+      while (walk.next()) {
+        changedPaths.add(walk.getPathString());
+      }
+    } finally {
+      walk.close();
     }
+    return changedPaths;
   }
 
   public String getCurrentConnectionUrl() throws ScmException {
@@ -122,6 +297,43 @@ public class GitUtil {
     return null;
   }
 
+  /**
+   * @return the revision of the remote-tracking ref that the fetch refspecs of the remote map the remote branch to or
+   *         {@code null} if the remote branch is not tracked.
+   */
+  public ObjectId getRemoteTrackingRevision(String remoteName, String remoteBranchName) {
+    RefSpec refSpec = getTrackingRefSpec(remoteName, remoteBranchName);
+    if (refSpec == null) {
+      return null;
+    }
+    try {
+      Ref ref = this.git.getRepository().exactRef(refSpec.getDestination());
+      return ref != null ? ref.getObjectId() : null;
+    } catch (IOException e) {
+      throw new ScmException(ScmOperation.INFO,
+          "An error occurred while reading the remote-tracking ref of '" + remoteBranchName + "'.", e);
+    }
+  }
+
+  /**
+   * @return the fetch refspec of the remote narrowed to the passed remote branch (e.g.
+   *         {@code +refs/heads/master:refs/remotes/origin/master}) or {@code null} if none of the fetch refspecs of the
+   *         remote covers the branch.
+   */
+  public RefSpec getTrackingRefSpec(String remoteName, String remoteBranchName) {
+    try {
+      RemoteConfig remoteConfig = new RemoteConfig(this.git.getRepository().getConfig(), remoteName);
+      for (RefSpec refSpec : remoteConfig.getFetchRefSpecs()) {
+        if (refSpec.matchSource(remoteBranchName)) {
+          return refSpec.expandFromSource(remoteBranchName);
+        }
+      }
+    } catch (URISyntaxException e) {
+      throw new ScmException(ScmOperation.INFO, "Invalid configuration of remote '" + remoteName + "'.", e);
+    }
+    return null;
+  }
+
   public boolean hasLocalTag(String tagName) {
     try {
       List<Ref> tags = this.git.tagList().call();
@@ -188,4 +400,33 @@ public class GitUtil {
     Iterable<RevCommit> commits = this.git.log().addRange(fromId, toId).call();
     return Lists.newArrayList(commits);
   }
+
+  /**
+   * Skips all paths that are neither in HEAD nor in the index, i.e. untracked files and directories.
+   */
+  private static class TrackedPathsFilter extends TreeFilter {
+    // tree positions used by IndexDiff
+    private static final int TREE = 0;
+    private static final int INDEX = 1;
+
+    @Override
+    public boolean include(TreeWalk walker) {
+      return walker.getRawMode(TREE) != 0 || walker.getRawMode(INDEX) != 0;
+    }
+
+    @Override
+    public boolean shouldBeRecursive() {
+      return false;
+    }
+
+    @Override
+    public TreeFilter clone() {
+      return this;
+    }
+
+    @Override
+    public String toString() {
+      return "TRACKED_PATHS";
+    }
+  }
 }
@@ -1,5 +1,7 @@
 package com.itemis.maven.plugins.unleash.scm.providers.util;
 
+import java.nio.charset.Charset;
+
 import com.jcraft.jsch.Identity;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
@@ -8,15 +10,25 @@ import com.jcraft.jsch.KeyPair;
 public class InMemoryIdentity implements Identity {
   private KeyPair keyPair;
   private String identity;
+  private boolean shared;
 
   public static InMemoryIdentity newInstance(String name, String privateKey, JSch jsch) throws JSchException {
     KeyPair kpair = KeyPair.load(jsch, privateKey.getBytes(), null);
-    return new InMemoryIdentity(jsch, name, kpair);
+    return new InMemoryIdentity(jsch, name, kpair, false);
+  }
+
+  /**
+   * Creates an identity for a key pair that is shared with other identities, e.g. a cached one. Clearing such an
+   * identity does not dispose the key pair.
+   */
+  public static InMemoryIdentity newSharedInstance(String name, KeyPair keyPair, JSch jsch) throws JSchException {
+    return new InMemoryIdentity(jsch, name, keyPair, true);
   }
 
-  private InMemoryIdentity(JSch jsch, String name, KeyPair keyPair) throws JSchException {
+  private InMemoryIdentity(JSch jsch, String name, KeyPair keyPair, boolean shared) throws JSchException {
     this.identity = name;
     this.keyPair = keyPair;
+    this.shared = shared;
   }
 
   @Override
@@ -50,12 +62,25 @@ public class InMemoryIdentity implements Identity {
         algName = "ssh-rsa";
         break;
       default:
-        algName = "unknown";
+        algName = getAlgNameFromPublicKeyBlob();
         break;
     }
     return algName;
   }
 
+  private String getAlgNameFromPublicKeyBlob() {
+    // the public key blob starts with the length-prefixed algorithm name
+    byte[] blob = this.keyPair.getPublicKeyBlob();
+    if (blob == null || blob.length < 4) {
+      return "unknown";
+    }
+    int length = ((blob[0] & 0xff) << 24) | ((blob[1] & 0xff) << 16) | ((blob[2] & 0xff) << 8) | (blob[3] & 0xff);
+    if (length <= 0 || length > blob.length - 4) {
+      return "unknown";
+    }
+    return new String(blob, 4, length, Charset.forName("US-ASCII"));
+  }
+
   @Override
   public String getName() {
     return this.identity;
@@ -68,7 +93,9 @@ public class InMemoryIdentity implements Identity {
 
   @Override
   public void clear() {
-    this.keyPair.dispose();
+    if (!this.shared) {
+      this.keyPair.dispose();
+    }
     this.keyPair = null;
   }
 
@@ -0,0 +1,101 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jcraft.jsch.HostKey;
+import com.jcraft.jsch.HostKeyRepository;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.UserInfo;
+
+/**
+ * A {@link HostKeyRepository} that answers host key checks for plain host names from a hashed index instead of
+ * scanning all known_hosts entries. Hashed host names, patterns and failed lookups are delegated to the wrapped
+ * repository.
+ */
+public class IndexedHostKeyRepository implements HostKeyRepository {
+  private final HostKeyRepository delegate;
+  private Map<String, List<HostKey>> index;
+
+  public IndexedHostKeyRepository(HostKeyRepository delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public int check(String host, byte[] key) {
+    List<HostKey> candidates = getIndex().get(host);
+    if (candidates != null) {
+      try {
+        String encodedKey = new HostKey(host, key).getKey();
+        for (HostKey candidate : candidates) {
+          if (Objects.equal(encodedKey, candidate.getKey())) {
+            return OK;
+          }
+        }
+      } catch (JSchException e) {
+        // unknown key type -> let the delegate decide
+      }
+    }
+    return this.delegate.check(host, key);
+  }
+
+  @Override
+  public synchronized void add(HostKey hostkey, UserInfo ui) {
+    this.delegate.add(hostkey, ui);
+    this.index = null;
+  }
+
+  @Override
+  public synchronized void remove(String host, String type) {
+    this.delegate.remove(host, type);
+    this.index = null;
+  }
+
+  @Override
+  public synchronized void remove(String host, String type, byte[] key) {
+    this.delegate.remove(host, type, key);
+    this.index = null;
+  }
+
+  @Override
+  public String getKnownHostsRepositoryID() {
+    return this.delegate.getKnownHostsRepositoryID();
+  }
+
+  @Override
+  public HostKey[] getHostKey() {
+    return this.delegate.getHostKey();
+  }
+
+  @Override
+  public HostKey[] getHostKey(String host, String type) {
+    return this.delegate.getHostKey(host, type);
+  }
+
+  private synchronized Map<String, List<HostKey>> getIndex() {
+    if (this.index == null) {
+      Map<String, List<HostKey>> newIndex = Maps.newHashMap();
+      HostKey[] hostKeys = this.delegate.getHostKey();
+      if (hostKeys != null) {
+        for (HostKey hostKey : hostKeys) {
+          for (String host : hostKey.getHost().split(",")) {
+            if (host.startsWith("|") || host.startsWith("!") || host.indexOf('*') >= 0 || host.indexOf('?') >= 0) {
+              continue;
+            }
+            List<HostKey> keys = newIndex.get(host);
+            if (keys == null) {
+              keys = Lists.newArrayListWithCapacity(1);
+              newIndex.put(host, keys);
+            }
+            keys.add(hostKey);
+          }
+        }
+      }
+      this.index = newIndex;
+    }
+    return this.index;
+  }
+}
@@ -0,0 +1,425 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.TransportConfigCallback;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.TagOpt;
+import org.eclipse.jgit.util.FileUtils;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+/**
+ * A directory of bare mirrors of remote repositories, keyed by remote URL. A checkout borrows the objects of the
+ * mirror via {@code objects/info/alternates}, so it only has to fetch the objects the mirror does not know yet.<br>
+ * <br>
+ * Mirrors are refreshed in the background once their last refresh is older than the configured interval. After each
+ * refresh the least recently used mirrors are evicted until the cache fits into its size limit. Each mirror records the
+ * repositories borrowing its objects and a mirror is only evicted once none of these repositories exists anymore or
+ * borrows from the mirror, since an evicted mirror would take the borrowed objects with it. The cache may therefore
+ * exceed its size limit as long as the working copies of its mirrors are in use.<br>
+ * <br>
+ * Creation and refresh of a mirror are guarded by a file lock, so several processes can share one cache directory.
+ */
+public class MirrorCache {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final String MIRROR_SUFFIX = ".git";
+  private static final String LOCK_SUFFIX = ".lock";
+  private static final String MARKER_USED = "unleash-used";
+  private static final String MARKER_REFRESHED = "unleash-refreshed";
+  private static final String BORROWERS = "unleash-borrowers";
+  private static final String ALTERNATES = "objects/info/alternates";
+  private static final Map<String, ReentrantLock> LOCKS = Maps.newHashMap();
+
+  private final File cacheDir;
+  private final long maxSize;
+  private final long refreshInterval;
+  private final CredentialsProvider credentialsProvider;
+  private final TransportConfigCallback configCallback;
+  private final Logger log;
+  private ExecutorService executor;
+
+  /**
+   * @param maxSize the maximum size of all mirrors in bytes. A negative value disables the eviction.
+   * @param refreshInterval the time in milliseconds after which a mirror is refreshed when it is used. A negative value
+   *          disables the refresh.
+   */
+  public MirrorCache(File cacheDir, long maxSize, long refreshInterval, CredentialsProvider credentialsProvider,
+      TransportConfigCallback configCallback, Logger log) {
+    this.cacheDir = cacheDir;
+    this.maxSize = maxSize;
+    this.refreshInterval = refreshInterval;
+    this.credentialsProvider = credentialsProvider;
+    this.configCallback = configCallback;
+    this.log = log;
+  }
+
+  /**
+   * Returns the mirror of the passed remote, creating it if the cache does not contain it yet. If the mirror is due for
+   * a refresh, the refresh is scheduled in the background and the current state of the mirror is returned.<br>
+   * <br>
+   * The objects of the mirror are added to the {@code objects/info/alternates} of the passed repository, which is
+   * recorded as borrower of the mirror. This protects the mirror from eviction as long as the repository borrows from
+   * it.
+   *
+   * @param remoteUrl the URL of the remote repository.
+   * @param borrower the git directory of the repository that is going to borrow the objects of the mirror.
+   * @return the git directory of the bare mirror or {@code null} if the mirror could not be created.
+   */
+  public File getMirror(String remoteUrl, File borrower) {
+    final File mirror = new File(this.cacheDir, Hashing.sha1().hashString(remoteUrl, UTF8) + MIRROR_SUFFIX);
+    boolean refresh;
+    try {
+      Lock lock = lock(mirror, true);
+      try {
+        if (!new File(mirror, "objects").isDirectory()) {
+          createMirror(remoteUrl, mirror);
+          refresh = false;
+        } else {
+          refresh = this.refreshInterval >= 0
+              && System.currentTimeMillis() - getTimestamp(mirror, MARKER_REFRESHED) >= this.refreshInterval;
+        }
+        touch(mirror, MARKER_USED);
+        // both under the lock, so an eviction never sees a borrower without its alternates
+        Files.append(borrower.getAbsolutePath() + "\n", new File(mirror, BORROWERS), UTF8);
+        Files.write(new File(mirror, "objects").getAbsolutePath() + "\n", new File(borrower, ALTERNATES), UTF8);
+      } finally {
+        lock.release();
+      }
+    } catch (Exception e) {
+      if (this.log.isLoggable(Level.WARNING)) {
+        this.log.warning("Unable to provide a local mirror of '" + remoteUrl + "' (" + e.getMessage() + ").");
+      }
+      return null;
+    }
+
+    if (refresh || this.maxSize >= 0) {
+      final boolean refreshMirror = refresh;
+      getExecutor().execute(new Runnable() {
+
+        @Override
+        public void run() {
+          if (refreshMirror) {
+            refreshMirror(mirror);
+          }
+          evictMirrors(mirror);
+        }
+      });
+    }
+    return mirror;
+  }
+
+  /**
+   * Returns the mirror of the passed remote if the cache contains it already. Other than
+   * {@link #getMirror(String, File)} this neither creates nor refreshes the mirror and registers no borrower, the
+   * mirror is only marked as used so that it is the last candidate for an eviction.
+   *
+   * @param remoteUrl the URL of the remote repository.
+   * @return the git directory of the bare mirror or {@code null} if the cache does not contain a mirror of the remote.
+   */
+  public File findMirror(String remoteUrl) {
+    File mirror = new File(this.cacheDir, Hashing.sha1().hashString(remoteUrl, UTF8) + MIRROR_SUFFIX);
+    if (!mirror.isDirectory()) {
+      return null;
+    }
+    try {
+      Lock lock = lock(mirror, true);
+      try {
+        if (!new File(mirror, "objects").isDirectory()) {
+          return null;
+        }
+        touch(mirror, MARKER_USED);
+        return mirror;
+      } finally {
+        lock.release();
+      }
+    } catch (IOException e) {
+      if (this.log.isLoggable(Level.WARNING)) {
+        this.log.warning("Unable to look up the local mirror of '" + remoteUrl + "' (" + e.getMessage() + ").");
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Waits for pending refreshes and evictions to finish and stops the background thread.
+   */
+  public synchronized void close() {
+    if (this.executor != null) {
+      this.executor.shutdown();
+      try {
+        this.executor.awaitTermination(10, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      this.executor = null;
+    }
+  }
+
+  private void createMirror(String remoteUrl, File mirror) throws GitAPIException, IOException {
+    if (this.log.isLoggable(Level.FINE)) {
+      this.log.fine("Creating local mirror of '" + remoteUrl + "' in '" + mirror.getAbsolutePath() + "'.");
+    }
+    if (mirror.exists()) {
+      // remainders of an aborted creation
+      FileUtils.delete(mirror, FileUtils.RECURSIVE | FileUtils.RETRY);
+    }
+    try {
+      Git.cloneRepository().setBare(true).setURI(remoteUrl).setDirectory(mirror)
+          .setCredentialsProvider(this.credentialsProvider).setTransportConfigCallback(this.configCallback).call()
+          .close();
+    } catch (GitAPIException e) {
+      FileUtils.delete(mirror, FileUtils.RECURSIVE | FileUtils.RETRY | FileUtils.SKIP_MISSING);
+      throw e;
+    }
+    touch(mirror, MARKER_REFRESHED);
+  }
+
+  private void refreshMirror(File mirror) {
+    try {
+      Lock lock = lock(mirror, false);
+      if (lock == null) {
+        // somebody else is working on this mirror
+        return;
+      }
+      try {
+        if (this.log.isLoggable(Level.FINE)) {
+          this.log.fine("Refreshing local mirror '" + mirror.getAbsolutePath() + "'.");
+        }
+        Git git = Git.open(mirror);
+        try {
+          git.fetch().setTagOpt(TagOpt.FETCH_TAGS).setCredentialsProvider(this.credentialsProvider)
+              .setTransportConfigCallback(this.configCallback).call();
+        } finally {
+          git.close();
+        }
+        touch(mirror, MARKER_REFRESHED);
+      } finally {
+        lock.release();
+      }
+    } catch (Exception e) {
+      if (this.log.isLoggable(Level.WARNING)) {
+        this.log.warning("Unable to refresh local mirror '" + mirror.getAbsolutePath() + "' (" + e.getMessage() + ").");
+      }
+    }
+  }
+
+  private void evictMirrors(File current) {
+    if (this.maxSize < 0) {
+      return;
+    }
+    File[] mirrors = this.cacheDir.listFiles();
+    if (mirrors == null) {
+      return;
+    }
+
+    List<File> candidates = Lists.newArrayList();
+    long totalSize = 0;
+    for (File mirror : mirrors) {
+      if (mirror.isDirectory() && mirror.getName().endsWith(MIRROR_SUFFIX)) {
+        totalSize += getSize(mirror);
+        if (!mirror.equals(current)) {
+          candidates.add(mirror);
+        }
+      }
+    }
+
+    final Map<File, Long> lastUsed = Maps.newHashMap();
+    for (File candidate : candidates) {
+      lastUsed.put(candidate, getTimestamp(candidate, MARKER_USED));
+    }
+    File[] lru = candidates.toArray(new File[candidates.size()]);
+    Arrays.sort(lru, new Comparator<File>() {
+
+      @Override
+      public int compare(File f1, File f2) {
+        return lastUsed.get(f1).compareTo(lastUsed.get(f2));
+      }
+    });
+
+    for (int i = 0; i < lru.length && totalSize > this.maxSize; i++) {
+      File mirror = lru[i];
+      try {
+        Lock lock = lock(mirror, false);
+        if (lock == null) {
+          continue;
+        }
+        try {
+          if (isBorrowed(mirror)) {
+            continue;
+          }
+          long size = getSize(mirror);
+          if (this.log.isLoggable(Level.FINE)) {
+            this.log.fine("Evicting local mirror '" + mirror.getAbsolutePath() + "' (" + size + " bytes).");
+          }
+          FileUtils.delete(mirror, FileUtils.RECURSIVE | FileUtils.RETRY);
+          totalSize -= size;
+        } finally {
+          lock.release();
+        }
+      } catch (IOException e) {
+        if (this.log.isLoggable(Level.WARNING)) {
+          this.log.warning("Unable to evict local mirror '" + mirror.getAbsolutePath() + "' (" + e.getMessage() + ").");
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks whether any of the recorded borrowers of the mirror still borrows its objects and drops the borrowers that
+   * do not.
+   */
+  private boolean isBorrowed(File mirror) throws IOException {
+    File borrowersFile = new File(mirror, BORROWERS);
+    if (!borrowersFile.exists()) {
+      return false;
+    }
+
+    String objects = new File(mirror, "objects").getAbsolutePath();
+    Set<String> borrowers = Sets.newLinkedHashSet();
+    for (String borrower : Files.readLines(borrowersFile, UTF8)) {
+      File alternates = new File(borrower, ALTERNATES);
+      if (!borrower.isEmpty() && alternates.isFile() && Files.readLines(alternates, UTF8).contains(objects)) {
+        borrowers.add(borrower);
+      }
+    }
+    if (borrowers.isEmpty()) {
+      FileUtils.delete(borrowersFile);
+      return false;
+    }
+    Files.write(Joiner.on('\n').join(borrowers) + "\n", borrowersFile, UTF8);
+    if (this.log.isLoggable(Level.FINE)) {
+      this.log.fine("Keeping local mirror '" + mirror.getAbsolutePath() + "' which is still borrowed from by "
+          + borrowers.size() + " repositories.");
+    }
+    return true;
+  }
+
+  private synchronized ExecutorService getExecutor() {
+    if (this.executor == null) {
+      this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "unleash-git-mirror-cache");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return this.executor;
+  }
+
+  /**
+   * Acquires the lock of a mirror, first within this process and then across processes.
+   *
+   * @param wait whether to wait for the lock or to give up if it is currently held by somebody else.
+   * @return the lock or {@code null} if {@code wait} is {@code false} and the lock is held by somebody else.
+   */
+  private Lock lock(File mirror, boolean wait) throws IOException {
+    ReentrantLock processLock;
+    synchronized (LOCKS) {
+      processLock = LOCKS.get(mirror.getAbsolutePath());
+      if (processLock == null) {
+        processLock = new ReentrantLock();
+        LOCKS.put(mirror.getAbsolutePath(), processLock);
+      }
+    }
+    if (wait) {
+      processLock.lock();
+    } else if (!processLock.tryLock()) {
+      return null;
+    }
+
+    RandomAccessFile file = null;
+    try {
+      this.cacheDir.mkdirs();
+      file = new RandomAccessFile(new File(this.cacheDir, mirror.getName() + LOCK_SUFFIX), "rw");
+      FileChannel channel = file.getChannel();
+      FileLock fileLock = wait ? channel.lock() : channel.tryLock();
+      if (fileLock != null) {
+        return new Lock(processLock, file, fileLock);
+      }
+    } catch (IOException e) {
+      Closeables.close(file, true);
+      processLock.unlock();
+      throw e;
+    }
+    Closeables.close(file, true);
+    processLock.unlock();
+    return null;
+  }
+
+  private static long getSize(File file) {
+    if (file.isFile()) {
+      return file.length();
+    }
+    long size = 0;
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        size += getSize(child);
+      }
+    }
+    return size;
+  }
+
+  private static long getTimestamp(File mirror, String marker) {
+    File f = new File(mirror, marker);
+    return f.exists() ? f.lastModified() : mirror.lastModified();
+  }
+
+  private static void touch(File mirror, String marker) throws IOException {
+    File f = new File(mirror, marker);
+    if (!f.exists()) {
+      f.createNewFile();
+    }
+    f.setLastModified(System.currentTimeMillis());
+  }
+
+  private static class Lock {
+    private final ReentrantLock processLock;
+    private final RandomAccessFile file;
+    private final FileLock fileLock;
+
+    private Lock(ReentrantLock processLock, RandomAccessFile file, FileLock fileLock) {
+      this.processLock = processLock;
+      this.file = file;
+      this.fileLock = fileLock;
+    }
+
+    private void release() throws IOException {
+      try {
+        this.fileLock.release();
+        this.file.close();
+      } finally {
+        this.processLock.unlock();
+      }
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.PackInserter;
+import org.eclipse.jgit.lib.CoreConfig;
+import org.eclipse.jgit.lib.ObjectDatabase;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.PackParser;
+
+/**
+ * An object inserter that writes the objects of bulk operations into a pack instead of loose objects.<br>
+ * <br>
+ * JGit's default inserter deflates every object into a file of its own, so a release commit touching hundreds of POMs
+ * or a merge of two release branches creates hundreds of files in the object database. Above a configurable number of
+ * objects this inserter appends all further objects to a single pack which is indexed and made visible to the object
+ * database on {@link #flush()}. If the caller knows the number of objects up front and it reaches the threshold, all
+ * objects go into the pack right from the start, otherwise the first objects are written loose until the threshold is
+ * reached. Objects that exist already are skipped in both cases.<br>
+ * <br>
+ * Readers created by {@link #newReader()} see all objects inserted so far, including the ones not flushed yet.
+ */
+public class PackingObjectInserter extends ObjectInserter {
+  private final ObjectInserter looseInserter;
+  private final PackInserter packInserter;
+  private final int threshold;
+  private int count;
+
+  private PackingObjectInserter(Repository repository, ObjectDirectory objectDirectory, int expectedObjects,
+      int threshold) {
+    this.looseInserter = repository.newObjectInserter();
+    this.packInserter = objectDirectory.newPackInserter();
+    this.packInserter.checkExisting(true);
+    this.packInserter.setCompressionLevel(repository.getConfig().get(CoreConfig.KEY).getCompression());
+    this.threshold = threshold;
+    this.count = Math.max(expectedObjects, 0);
+  }
+
+  /**
+   * Creates an inserter for the passed repository that switches to a pack once the threshold is reached.
+   *
+   * @param expectedObjects the number of objects the caller is going to insert or {@code 0} if unknown.
+   * @param threshold the number of objects from which on objects are written into a pack. Values below {@code 1}
+   *          disable packing.
+   * @return the packing inserter or the default inserter of the repository if packing is disabled or the object
+   *         database does not support packs.
+   */
+  public static ObjectInserter create(Repository repository, int expectedObjects, int threshold) {
+    ObjectDatabase objectDatabase = repository.getObjectDatabase();
+    if (threshold < 1 || !(objectDatabase instanceof ObjectDirectory)) {
+      return repository.newObjectInserter();
+    }
+    return new PackingObjectInserter(repository, (ObjectDirectory) objectDatabase, expectedObjects, threshold);
+  }
+
+  @Override
+  public ObjectId insert(int type, byte[] data, int off, int len) throws IOException {
+    return nextInserter().insert(type, data, off, len);
+  }
+
+  @Override
+  public ObjectId insert(int objectType, long length, InputStream in) throws IOException {
+    return nextInserter().insert(objectType, length, in);
+  }
+
+  private ObjectInserter nextInserter() {
+    if (this.count >= this.threshold) {
+      return this.packInserter;
+    }
+    this.count++;
+    return this.looseInserter;
+  }
+
+  @Override
+  public PackParser newPackParser(InputStream in) throws IOException {
+    return this.looseInserter.newPackParser(in);
+  }
+
+  @Override
+  public ObjectReader newReader() {
+    // falls back to the object database, which covers the loose objects and all flushed packs
+    return this.packInserter.newReader();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    this.looseInserter.flush();
+    this.packInserter.flush();
+  }
+
+  @Override
+  public void close() {
+    this.looseInserter.close();
+    this.packInserter.close();
+  }
+}
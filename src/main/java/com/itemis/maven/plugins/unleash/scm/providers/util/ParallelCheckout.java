@@ -0,0 +1,209 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheCheckout;
+import org.eclipse.jgit.dircache.DirCacheCheckout.CheckoutMetadata;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.util.FileUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Materializes a tree into the working tree using a pool of worker threads. Checking out large trees with JGit's
+ * {@link DirCacheCheckout} writes one file after the other on the calling thread which leaves the machine mostly waiting
+ * for I/O.<br>
+ * <br>
+ * All directories are created up front in path order, then the files are distributed over the workers, each of which
+ * inflates the blobs with its own {@link ObjectReader} and writes them (applying EOL conversion and smudge filters as
+ * configured). The index is written once after all files have been written.<br>
+ * <br>
+ * The checkout is meant for freshly cloned repositories and overwrites existing files without any conflict checks.
+ */
+public class ParallelCheckout {
+  private final Repository repository;
+  private final int threads;
+  private final Logger log;
+
+  /**
+   * @param threads the number of worker threads. Values below {@code 2} write all files on the calling thread.
+   */
+  public ParallelCheckout(Repository repository, int threads, Logger log) {
+    this.repository = repository;
+    this.threads = threads;
+    this.log = log;
+  }
+
+  /**
+   * Writes the files of the passed tree into the working tree and updates the index accordingly.
+   *
+   * @param tree the tree to check out.
+   * @param paths the paths (files or directories) to check out or {@code null} to check out the whole tree. If paths
+   *          are given, index entries of other paths are kept, otherwise the index is replaced completely.
+   */
+  public void checkout(RevTree tree, Collection<String> paths) throws IOException {
+    List<Entry> entries = Lists.newArrayList();
+    Set<String> dirs = Sets.newTreeSet();
+    TreeWalk walk = new TreeWalk(this.repository);
+    try {
+      walk.setOperationType(OperationType.CHECKOUT_OP);
+      walk.setRecursive(true);
+      walk.addTree(tree);
+      if (paths != null) {
+        walk.setFilter(PathFilterGroup.createFromStrings(paths));
+      }
+      while (walk.next()) {
+        String path = walk.getPathString();
+        FileMode mode = walk.getFileMode(0);
+        DirCacheEntry entry = new DirCacheEntry(path);
+        entry.setFileMode(mode);
+        entry.setObjectId(walk.getObjectId(0));
+        if (FileMode.GITLINK.equals(mode)) {
+          // submodules are not cloned, just create their (empty) directory
+          dirs.add(path);
+          entries.add(new Entry(entry, null));
+        } else {
+          entries.add(new Entry(entry, new CheckoutMetadata(walk.getEolStreamType(OperationType.CHECKOUT_OP),
+              walk.getFilterCommand(Constants.ATTR_FILTER_TYPE_SMUDGE))));
+        }
+        int slash = path.lastIndexOf('/');
+        if (slash > 0) {
+          dirs.add(path.substring(0, slash));
+        }
+      }
+    } finally {
+      walk.close();
+    }
+
+    if (this.log.isLoggable(Level.FINE)) {
+      this.log.fine("Checking out " + entries.size() + " files using " + Math.max(1, this.threads) + " threads.");
+    }
+
+    // the tree set yields parents before their children
+    File workTree = this.repository.getWorkTree();
+    for (String dir : dirs) {
+      FileUtils.mkdirs(new File(workTree, dir), true);
+    }
+    writeFiles(entries);
+    updateIndex(entries, paths != null);
+  }
+
+  private void writeFiles(final List<Entry> entries) throws IOException {
+    if (this.threads < 2) {
+      new Worker(entries, 0, 1).call();
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+    try {
+      List<Future<Void>> results = Lists.newArrayListWithCapacity(this.threads);
+      for (int i = 0; i < this.threads; i++) {
+        results.add(executor.submit(new Worker(entries, i, this.threads)));
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while checking out files.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Unable to check out files.", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void updateIndex(List<Entry> entries, boolean keepOtherEntries) throws IOException {
+    DirCache dirCache = this.repository.lockDirCache();
+    try {
+      DirCacheBuilder builder = dirCache.builder();
+      if (keepOtherEntries) {
+        Set<String> written = Sets.newHashSetWithExpectedSize(entries.size());
+        for (Entry entry : entries) {
+          written.add(entry.dirCacheEntry.getPathString());
+        }
+        for (int i = 0; i < dirCache.getEntryCount(); i++) {
+          DirCacheEntry existing = dirCache.getEntry(i);
+          if (!written.contains(existing.getPathString())) {
+            builder.add(existing);
+          }
+        }
+      }
+      for (Entry entry : entries) {
+        builder.add(entry.dirCacheEntry);
+      }
+      builder.finish();
+      dirCache.write();
+      dirCache.commit();
+    } finally {
+      dirCache.unlock();
+    }
+  }
+
+  /**
+   * Writes every n-th entry so that all workers get a similar mix of small and large files.
+   */
+  private class Worker implements Callable<Void> {
+    private final List<Entry> entries;
+    private final int offset;
+    private final int step;
+
+    private Worker(List<Entry> entries, int offset, int step) {
+      this.entries = entries;
+      this.offset = offset;
+      this.step = step;
+    }
+
+    @Override
+    public Void call() throws IOException {
+      ObjectReader reader = ParallelCheckout.this.repository.newObjectReader();
+      try {
+        for (int i = this.offset; i < this.entries.size(); i += this.step) {
+          Entry entry = this.entries.get(i);
+          if (entry.metadata != null) {
+            DirCacheCheckout.checkoutEntry(ParallelCheckout.this.repository, entry.dirCacheEntry, reader, false,
+                entry.metadata);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+      return null;
+    }
+  }
+
+  private static class Entry {
+    private final DirCacheEntry dirCacheEntry;
+    private final CheckoutMetadata metadata;
+
+    private Entry(DirCacheEntry dirCacheEntry, CheckoutMetadata metadata) {
+      this.dirCacheEntry = dirCacheEntry;
+      this.metadata = metadata;
+    }
+  }
+}
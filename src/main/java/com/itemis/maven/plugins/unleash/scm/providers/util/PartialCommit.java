@@ -0,0 +1,287 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.api.errors.ConcurrentRefUpdateException;
+import org.eclipse.jgit.api.errors.EmptyCommitException;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.JGitInternalException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.hooks.Hooks;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryState;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Commits the changes of some paths only, like {@code git commit --only <paths>} or JGit's
+ * {@link org.eclipse.jgit.api.CommitCommand#setOnly(String)}.<br>
+ * <br>
+ * JGit builds a temporary index for partial commits by walking HEAD, the index and the whole working tree, hashing
+ * every file of the commit paths again. Since the caller already knows from the status which paths changed, this
+ * implementation only reads the changed files, builds the new index and the tree of the commit in one pass over the
+ * index and the HEAD tree (copying untouched subtrees of HEAD as a whole) and writes the commit object directly. The
+ * result is the same commit, index and reflog entry JGit would produce, hooks are run the same way.<br>
+ * <br>
+ * Partial commits during merges and with conflicts are not supported, callers have to use the {@code CommitCommand} in
+ * these cases (see {@link #isApplicable(Set)}).
+ */
+public class PartialCommit {
+  private final Repository repository;
+  private final int packInsertThreshold;
+
+  /**
+   * @param packInsertThreshold the number of new objects from which on the objects of the commit are written into a
+   *          pack, see {@link PackingObjectInserter}.
+   */
+  public PartialCommit(Repository repository, int packInsertThreshold) {
+    this.repository = repository;
+    this.packInsertThreshold = packInsertThreshold;
+  }
+
+  /**
+   * @param conflictingPaths the conflicting paths of the status.
+   * @return whether a partial commit can be performed in the current state of the repository.
+   */
+  public boolean isApplicable(Set<String> conflictingPaths) {
+    return conflictingPaths.isEmpty() && this.repository.getRepositoryState() == RepositoryState.SAFE;
+  }
+
+  /**
+   * Commits the passed paths with their content in the working tree. Changes of other paths that are staged already
+   * stay in the index but are not committed.
+   *
+   * @param onlyPaths the paths (files or directories) to commit.
+   * @param pathsToAdd all files below the commit paths that are new or modified in the working tree.
+   * @param pathsToRemove all files below the commit paths that are missing in the working tree.
+   * @param message the commit message.
+   * @param committer the committer and author of the commit.
+   * @return the new commit.
+   */
+  public RevCommit commit(Collection<String> onlyPaths, Set<String> pathsToAdd, Set<String> pathsToRemove,
+      String message, PersonIdent committer) throws GitAPIException, IOException {
+    Hooks.preCommit(this.repository, null).call();
+    String commitMessage = Hooks.commitMsg(this.repository, null).setCommitMessage(message).call();
+
+    ObjectId headId = this.repository.resolve(Constants.HEAD + "^{commit}");
+    DirCache index = this.repository.lockDirCache();
+    // one blob per changed file plus the commit, the number of trees is not known before they are written
+    ObjectInserter inserter = PackingObjectInserter.create(this.repository, pathsToAdd.size() + 1,
+        this.packInsertThreshold);
+    RevWalk revWalk = new RevWalk(this.repository);
+    try {
+      Set<String> only = Sets.newHashSet(onlyPaths);
+      Set<String> unmatched = Sets.newHashSet(onlyPaths);
+      Map<String, DirCacheEntry> addedEntries = readWorkingTreeEntries(this.repository, index, pathsToAdd, inserter);
+
+      // the new index: all entries except the changed ones which are replaced by their working tree state
+      DirCacheBuilder indexBuilder = index.builder();
+      for (int i = 0; i < index.getEntryCount(); i++) {
+        DirCacheEntry entry = index.getEntry(i);
+        String path = entry.getPathString();
+        if (!addedEntries.containsKey(path) && !pathsToRemove.contains(path)) {
+          indexBuilder.add(entry);
+        }
+      }
+      for (DirCacheEntry entry : addedEntries.values()) {
+        indexBuilder.add(entry);
+      }
+      indexBuilder.finish();
+
+      // the tree of the commit: the commit paths from the new index, everything else from HEAD
+      DirCache commitIndex = DirCache.newInCore();
+      DirCacheBuilder treeBuilder = commitIndex.builder();
+      for (int i = 0; i < index.getEntryCount(); i++) {
+        DirCacheEntry entry = index.getEntry(i);
+        String onlyPath = getOnlyPath(only, entry.getPathString());
+        if (onlyPath != null) {
+          treeBuilder.add(entry);
+          unmatched.remove(onlyPath);
+        }
+      }
+      ObjectId headTreeId = null;
+      if (headId != null) {
+        headTreeId = revWalk.parseCommit(headId).getTree();
+        addHeadEntries(treeBuilder, headTreeId, only, unmatched);
+      }
+      treeBuilder.finish();
+      if (!unmatched.isEmpty()) {
+        throw new JGitInternalException("Entry not found by path: " + unmatched.iterator().next());
+      }
+
+      ObjectId treeId = commitIndex.writeTree(inserter);
+      if (treeId.equals(headTreeId)) {
+        throw new EmptyCommitException("No changes");
+      }
+      CommitBuilder commit = new CommitBuilder();
+      commit.setCommitter(committer);
+      commit.setAuthor(committer);
+      commit.setMessage(commitMessage);
+      if (headId != null) {
+        commit.setParentId(headId);
+      }
+      commit.setTreeId(treeId);
+      ObjectId commitId = inserter.insert(commit);
+      inserter.flush();
+      index.write();
+
+      RevCommit revCommit = revWalk.parseCommit(commitId);
+      RefUpdate ru = this.repository.updateRef(Constants.HEAD);
+      ru.setNewObjectId(commitId);
+      ru.setRefLogMessage((headId == null ? "commit (initial): " : "commit: ") + revCommit.getShortMessage(), false);
+      ru.setExpectedOldObjectId(headId == null ? ObjectId.zeroId() : headId);
+      RefUpdate.Result result = ru.forceUpdate();
+      switch (result) {
+        case NEW:
+        case FORCED:
+        case FAST_FORWARD:
+          if (!index.commit()) {
+            throw new IOException("Unable to write the index of '" + this.repository.getDirectory() + "'.");
+          }
+          break;
+        case REJECTED:
+        case LOCK_FAILURE:
+          throw new ConcurrentRefUpdateException("Could not lock HEAD.", ru.getRef(), result);
+        default:
+          throw new JGitInternalException("Updating the ref " + Constants.HEAD + " to " + commitId.name()
+              + " failed. ReturnCode from RefUpdate.update() was " + result);
+      }
+
+      Hooks.postCommit(this.repository, null).call();
+      return revCommit;
+    } finally {
+      revWalk.close();
+      inserter.close();
+      index.unlock();
+    }
+  }
+
+  /**
+   * Inserts the working tree content of the passed files into the object database.
+   *
+   * @return the new index entries of the files.
+   */
+  static Map<String, DirCacheEntry> readWorkingTreeEntries(Repository repository, DirCache index, Set<String> paths,
+      ObjectInserter inserter) throws IOException {
+    Map<String, DirCacheEntry> entries = Maps.newHashMap();
+    if (paths.isEmpty()) {
+      return entries;
+    }
+
+    TreeWalk walk = new TreeWalk(repository);
+    try {
+      walk.setOperationType(OperationType.CHECKIN_OP);
+      walk.setRecursive(true);
+      walk.setFilter(PathFilterGroup.createFromStrings(paths));
+      int indexTree = walk.addTree(new DirCacheIterator(index));
+      FileTreeIterator files = new FileTreeIterator(repository);
+      int filesTree = walk.addTree(files);
+      files.setDirCacheIterator(walk, indexTree);
+      while (walk.next()) {
+        String path = walk.getPathString();
+        FileTreeIterator file = walk.getTree(filesTree, FileTreeIterator.class);
+        if (file == null || !paths.contains(path)) {
+          continue;
+        }
+
+        DirCacheEntry entry = new DirCacheEntry(path);
+        FileMode mode = file.getIndexFileMode(walk.getTree(indexTree, DirCacheIterator.class));
+        entry.setFileMode(mode);
+        if (FileMode.GITLINK.equals(mode)) {
+          entry.setObjectId(file.getEntryObjectId());
+        } else {
+          entry.setLength(file.getEntryLength());
+          entry.setLastModified(file.getEntryLastModified());
+          long length = file.getEntryContentLength();
+          InputStream in = file.openEntryStream();
+          try {
+            entry.setObjectId(inserter.insert(Constants.OBJ_BLOB, length, in));
+          } finally {
+            in.close();
+          }
+        }
+        entries.put(path, entry);
+      }
+    } finally {
+      walk.close();
+    }
+    return entries;
+  }
+
+  /**
+   * Adds all entries of the HEAD tree that are not below one of the commit paths. Subtrees that do not contain any of
+   * the commit paths are copied as a whole.
+   */
+  private void addHeadEntries(DirCacheBuilder builder, ObjectId headTreeId, Set<String> only, Set<String> unmatched)
+      throws IOException {
+    Set<String> onlyParents = Sets.newHashSet();
+    for (String path : only) {
+      for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+        onlyParents.add(path.substring(0, slash));
+      }
+    }
+
+    TreeWalk walk = new TreeWalk(this.repository);
+    try {
+      walk.addTree(headTreeId);
+      while (walk.next()) {
+        String path = walk.getPathString();
+        String onlyPath = getOnlyPath(only, path);
+        if (onlyPath != null) {
+          // replaced by the state of the new index
+          unmatched.remove(onlyPath);
+        } else if (walk.isSubtree() && onlyParents.contains(path)) {
+          walk.enterSubtree();
+        } else if (walk.isSubtree()) {
+          builder.addTree(Constants.encode(path + "/"), DirCacheEntry.STAGE_0, walk.getObjectReader(),
+              walk.getObjectId(0));
+        } else {
+          DirCacheEntry entry = new DirCacheEntry(path);
+          entry.setFileMode(walk.getFileMode(0));
+          entry.setObjectId(walk.getObjectId(0));
+          builder.add(entry);
+        }
+      }
+    } finally {
+      walk.close();
+    }
+  }
+
+  /**
+   * @return the commit path the passed path is equal to or located in, {@code null} if there is none.
+   */
+  private static String getOnlyPath(Set<String> only, String path) {
+    String p = path;
+    while (true) {
+      if (only.contains(p)) {
+        return p;
+      }
+      int slash = p.lastIndexOf('/');
+      if (slash < 0) {
+        return null;
+      }
+      p = p.substring(0, slash);
+    }
+  }
+}
@@ -0,0 +1,330 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.CoreConfig.EolStreamType;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * A working tree iterator serving content ids that have been computed in parallel before the tree walk starts.<br>
+ * <br>
+ * Status computations compare the stat data of each file with its index entry and hash the content of the file
+ * whenever the stat data is inconclusive, e.g. if only the modification time changed or the entry is smudged. JGit
+ * hashes these files one after the other while walking the tree, which dominates the status computation after a
+ * build tool touched many files. This iterator checks the stat data of all index entries on a fork-join pool and
+ * hashes the candidates there (applying clean filters and EOL conversion like the tree walk would). The walk itself
+ * stays serial and in order, it just picks up the precomputed ids of files whose stat data did not change since.<br>
+ * <br>
+ * The iterator also records the files whose content has been compared and turned out to be unchanged despite
+ * inconclusive stat data.
+ * {@link #writeRefreshedStatData()} stores their current stat data in the index, so that later status computations
+ * can rely on the stat data alone instead of hashing these files again.
+ */
+public class PrehashedTreeIterator extends FileTreeIterator {
+  private static final int ENTRIES_PER_TASK = 512;
+
+  private final Map<String, ContentId> contentIds;
+  private final Map<String, StatData> refreshedStatData;
+
+  private PrehashedTreeIterator(Repository repository, Map<String, ContentId> contentIds) {
+    super(repository);
+    this.contentIds = contentIds;
+    this.refreshedStatData = Maps.newHashMap();
+  }
+
+  private PrehashedTreeIterator(PrehashedTreeIterator parent, File directory) {
+    super(parent, directory, parent.fs, parent.fileModeStrategy);
+    this.contentIds = parent.contentIds;
+    this.refreshedStatData = parent.refreshedStatData;
+  }
+
+  /**
+   * Creates an iterator over the working tree of the passed repository, hashing the files with inconclusive stat data
+   * beforehand.
+   *
+   * @param paths the paths (files or directories) the status is restricted to or {@code null} for all paths.
+   * @param threads the number of hashing threads. Values below {@code 2} leave all hashing to the tree walk.
+   */
+  public static PrehashedTreeIterator create(Repository repository, Collection<String> paths, int threads)
+      throws IOException {
+    DirCache dirCache = repository.readDirCache();
+    if (threads < 2 || dirCache.getEntryCount() <= ENTRIES_PER_TASK) {
+      return new PrehashedTreeIterator(repository, Collections.<String, ContentId> emptyMap());
+    }
+
+    // the cache tree is built lazily, build it before the index is shared between the threads
+    dirCache.getCacheTree(true);
+    Map<String, ContentId> contentIds = new ConcurrentHashMap<String, ContentId>();
+    Set<String> pathSet = paths != null && !paths.isEmpty() ? Sets.newHashSet(paths) : null;
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      pool.invoke(new HashTask(repository, dirCache, pathSet, contentIds, 0, dirCache.getEntryCount()));
+    } finally {
+      pool.shutdown();
+    }
+    return new PrehashedTreeIterator(repository, contentIds);
+  }
+
+  /**
+   * Writes the stat data of all files whose content was found to be unchanged into the index. The write-back is
+   * opportunistic, nothing is written if the index is locked by somebody else or the entry changed in the meantime.
+   */
+  public void writeRefreshedStatData() {
+    if (this.refreshedStatData.isEmpty()) {
+      return;
+    }
+
+    DirCache dirCache;
+    try {
+      dirCache = this.repository.lockDirCache();
+    } catch (IOException e) {
+      return;
+    }
+    try {
+      boolean changed = false;
+      for (int i = 0; i < dirCache.getEntryCount(); i++) {
+        DirCacheEntry entry = dirCache.getEntry(i);
+        StatData statData = this.refreshedStatData.get(entry.getPathString());
+        if (statData != null && entry.getStage() == DirCacheEntry.STAGE_0
+            && statData.objectId.equals(entry.getObjectId())) {
+          entry.setLastModified(statData.lastModified);
+          entry.setLength(statData.length);
+          changed = true;
+        }
+      }
+      if (changed) {
+        // entries that are still racily clean get smudged again by the write
+        dirCache.write();
+        dirCache.commit();
+      }
+    } catch (IOException e) {
+      // the index is just not refreshed, the next status computation hashes the files again
+    } finally {
+      dirCache.unlock();
+    }
+    this.refreshedStatData.clear();
+  }
+
+  @Override
+  public boolean isModified(DirCacheEntry entry, boolean forceContentCheck, ObjectReader reader) throws IOException {
+    boolean modified = super.isModified(entry, forceContentCheck, reader);
+    if (!modified && entry != null && isContentChecked(entry, forceContentCheck)) {
+      this.refreshedStatData.put(entry.getPathString(),
+          new StatData(entry.getObjectId(), getEntryLastModified(), getEntryLength()));
+    }
+    return modified;
+  }
+
+  /**
+   * Tells whether an entry found to be unmodified has been compared by content. Only then the current stat data of
+   * the file is known to belong to the content of the index entry. Assume-valid entries and entries with matching stat
+   * data are reported as unmodified without looking at the file content.
+   */
+  private boolean isContentChecked(DirCacheEntry entry, boolean forceContentCheck) {
+    if (!isFile(entry.getRawMode()) || !isFile(getEntryRawMode()) || entry.isAssumeValid() || entry.isUpdateNeeded()) {
+      return false;
+    }
+    if (entry.getLastModified() != getEntryLastModified()) {
+      // differing timestamps alone only lead to a content check if it is forced
+      return forceContentCheck;
+    }
+    return entry.isSmudged();
+  }
+
+  @Override
+  protected AbstractTreeIterator enterSubtree() {
+    return new PrehashedTreeIterator(this, getEntryFile());
+  }
+
+  @Override
+  public byte[] idBuffer() {
+    ContentId id = getContentId();
+    return id != null ? id.raw : super.idBuffer();
+  }
+
+  @Override
+  public int idOffset() {
+    return getContentId() != null ? 0 : super.idOffset();
+  }
+
+  private ContentId getContentId() {
+    if (this.contentIds.isEmpty() || !isFile(getEntryRawMode())) {
+      return null;
+    }
+    ContentId id = this.contentIds.get(getEntryPathString());
+    if (id == null || id.lastModified != getEntryLastModified() || id.length != getEntryLength()) {
+      return null;
+    }
+    if (!id.unchanged) {
+      // the content check of a changed file compares against the normalized index content if EOL conversion applies,
+      // which relies on buffers that are only set up by hashing on this iterator
+      try {
+        if (getEolStreamType() != EolStreamType.DIRECT) {
+          return null;
+        }
+      } catch (IOException e) {
+        return null;
+      }
+    }
+    return id;
+  }
+
+  private static boolean isFile(int mode) {
+    return (mode & FileMode.TYPE_MASK) == FileMode.TYPE_FILE;
+  }
+
+  /**
+   * Checks the stat data of a range of index entries, splitting the range until it is small enough to be processed by
+   * one thread.
+   */
+  private static class HashTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Repository repository;
+    private final DirCache dirCache;
+    private final Set<String> paths;
+    private final Map<String, ContentId> contentIds;
+    private final int from;
+    private final int to;
+
+    private HashTask(Repository repository, DirCache dirCache, Set<String> paths, Map<String, ContentId> contentIds,
+        int from, int to) {
+      this.repository = repository;
+      this.dirCache = dirCache;
+      this.paths = paths;
+      this.contentIds = contentIds;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from > ENTRIES_PER_TASK) {
+        int middle = (this.from + this.to) >>> 1;
+        invokeAll(new HashTask(this.repository, this.dirCache, this.paths, this.contentIds, this.from, middle),
+            new HashTask(this.repository, this.dirCache, this.paths, this.contentIds, middle, this.to));
+        return;
+      }
+
+      List<String> candidates = Lists.newArrayList();
+      File workTree = this.repository.getWorkTree();
+      for (int i = this.from; i < this.to; i++) {
+        DirCacheEntry entry = this.dirCache.getEntry(i);
+        String path = entry.getPathString();
+        if (entry.getStage() != DirCacheEntry.STAGE_0 || !isFile(entry.getRawMode()) || entry.isAssumeValid()
+            || !isIncluded(path)) {
+          continue;
+        }
+        File file = new File(workTree, path);
+        long lastModified = file.lastModified();
+        // same length but different timestamp or smudged entries are the ones the status has to hash
+        if (lastModified != 0 && (entry.isSmudged()
+            || (entry.getLength() == (int) file.length() && entry.getLastModified() != lastModified))) {
+          candidates.add(path);
+        }
+      }
+      if (!candidates.isEmpty()) {
+        try {
+          hash(candidates);
+        } catch (IOException e) {
+          // the tree walk of the status computation hashes the files itself and reports the error
+        }
+      }
+    }
+
+    private void hash(List<String> candidates) throws IOException {
+      Set<String> candidateSet = Sets.newHashSet(candidates);
+      TreeWalk walk = new TreeWalk(this.repository);
+      try {
+        walk.setOperationType(OperationType.CHECKIN_OP);
+        walk.setRecursive(true);
+        walk.setFilter(PathFilterGroup.createFromStrings(candidates));
+        int dirCacheTree = walk.addTree(new DirCacheIterator(this.dirCache));
+        FileTreeIterator files = new FileTreeIterator(this.repository);
+        walk.addTree(files);
+        files.setDirCacheIterator(walk, dirCacheTree);
+        while (walk.next()) {
+          FileTreeIterator file = walk.getTree(1, FileTreeIterator.class);
+          String path = walk.getPathString();
+          if (file != null && isFile(file.getEntryRawMode()) && candidateSet.contains(path)) {
+            DirCacheIterator index = walk.getTree(dirCacheTree, DirCacheIterator.class);
+            ObjectId id = file.getEntryObjectId();
+            this.contentIds.put(path, new ContentId(id, index != null && id.equals(index.getEntryObjectId()),
+                file.getEntryLastModified(), file.getEntryLength()));
+          }
+        }
+      } finally {
+        walk.close();
+      }
+    }
+
+    private boolean isIncluded(String path) {
+      if (this.paths == null) {
+        return true;
+      }
+      String p = path;
+      while (true) {
+        if (this.paths.contains(p)) {
+          return true;
+        }
+        int slash = p.lastIndexOf('/');
+        if (slash < 0) {
+          return false;
+        }
+        p = p.substring(0, slash);
+      }
+    }
+  }
+
+  private static class StatData {
+    private final ObjectId objectId;
+    private final long lastModified;
+    private final long length;
+
+    private StatData(ObjectId objectId, long lastModified, long length) {
+      this.objectId = objectId;
+      this.lastModified = lastModified;
+      this.length = length;
+    }
+  }
+
+  private static class ContentId {
+    private final byte[] raw;
+    private final boolean unchanged;
+    private final long lastModified;
+    private final long length;
+
+    private ContentId(ObjectId id, boolean unchanged, long lastModified, long length) {
+      this.raw = new byte[Constants.OBJECT_ID_LENGTH];
+      id.copyRawTo(this.raw, 0);
+      this.unchanged = unchanged;
+      this.lastModified = lastModified;
+      this.length = length;
+    }
+  }
+}
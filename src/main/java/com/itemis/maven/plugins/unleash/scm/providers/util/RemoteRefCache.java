@@ -0,0 +1,101 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.eclipse.jgit.transport.RemoteRefUpdate.Status;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Caches the ref advertisement (heads and tags) of the remotes the provider talks to so that a release needs a single
+ * ls-remote instead of one per query. Ref changes performed by the provider itself are patched into the cached
+ * snapshot, changes of third parties are picked up once the snapshot exceeds its maximum age.
+ */
+public class RemoteRefCache {
+  private final long maxAge;
+  private final Map<String, Snapshot> snapshots;
+
+  public RemoteRefCache(long maxAge) {
+    this.maxAge = maxAge;
+    this.snapshots = Maps.newHashMap();
+  }
+
+  /**
+   * @param remoteName the name of the remote.
+   * @return an unmodifiable view of the cached refs of the remote (ref name to object id) or {@code null} if there is
+   *         no snapshot or the snapshot is stale.
+   */
+  public synchronized Map<String, ObjectId> get(String remoteName) {
+    Snapshot snapshot = this.snapshots.get(remoteName);
+    if (snapshot == null) {
+      return null;
+    }
+    if (this.maxAge >= 0 && System.currentTimeMillis() - snapshot.timestamp >= this.maxAge) {
+      this.snapshots.remove(remoteName);
+      return null;
+    }
+    return Collections.unmodifiableMap(snapshot.refs);
+  }
+
+  /**
+   * Replaces the snapshot of the remote with the heads and tags of the passed advertisement.
+   *
+   * @return an unmodifiable view of the new snapshot.
+   */
+  public synchronized Map<String, ObjectId> put(String remoteName, Collection<Ref> advertisedRefs) {
+    Map<String, ObjectId> refs = Maps.newHashMapWithExpectedSize(advertisedRefs.size());
+    for (Ref ref : advertisedRefs) {
+      String name = ref.getName();
+      if (name.startsWith(Constants.R_HEADS) || name.startsWith(Constants.R_TAGS)) {
+        refs.put(name, ref.getObjectId());
+      }
+    }
+    this.snapshots.put(remoteName, new Snapshot(refs));
+    return Collections.unmodifiableMap(refs);
+  }
+
+  /**
+   * Patches the snapshot of the remote (if there is one) with the successful ref updates of the passed push result.
+   */
+  public synchronized void update(String remoteName, PushResult result) {
+    Snapshot snapshot = this.snapshots.get(remoteName);
+    if (snapshot == null) {
+      return;
+    }
+    for (RemoteRefUpdate update : result.getRemoteUpdates()) {
+      if (update.getStatus() != Status.OK) {
+        continue;
+      }
+      if (update.isDelete()) {
+        snapshot.refs.remove(update.getRemoteName());
+      } else {
+        snapshot.refs.put(update.getRemoteName(), update.getNewObjectId());
+      }
+    }
+  }
+
+  public synchronized void invalidate(String remoteName) {
+    this.snapshots.remove(remoteName);
+  }
+
+  public synchronized void invalidateAll() {
+    this.snapshots.clear();
+  }
+
+  private static class Snapshot {
+    private final long timestamp;
+    private final Map<String, ObjectId> refs;
+
+    private Snapshot(Map<String, ObjectId> refs) {
+      this.timestamp = System.currentTimeMillis();
+      this.refs = refs;
+    }
+  }
+}
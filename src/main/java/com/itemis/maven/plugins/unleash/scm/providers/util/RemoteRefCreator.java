@@ -0,0 +1,403 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.TransportConfigCallback;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.RefAlreadyExistsException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectDatabase;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TagBuilder;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevTag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.FetchConnection;
+import org.eclipse.jgit.transport.PushConnection;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.util.FileUtils;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+/**
+ * Creates refs in a remote repository without a local clone of it.<br>
+ * <br>
+ * New objects (e.g. an annotated tag) are written into a temporary bare repository which is pushed from. A push
+ * only has to send the objects the remote does not know, but JGit needs the pushed commit locally to find out which
+ * objects these are. Therefore the temporary repository gets the target commit from one of the passed local
+ * repositories (the working copy or a mirror):
+ * <ul>
+ * <li>If the commit is the tip of an advertised ref, only the commit object and the objects of its parents are copied,
+ * the parents are marked as shallow. The commit is known to the remote, so the push consists of the new objects only
+ * (none at all for a branch), independent of the size of the repository.</li>
+ * <li>Otherwise the temporary repository borrows all objects of the local repository, so the push can compute and send
+ * whatever the remote lacks.</li>
+ * </ul>
+ * If no local repository contains the commit, the commit is fetched from the remote.
+ */
+public class RemoteRefCreator {
+  private static final String SHALLOW_FILE = "shallow";
+
+  private final String remoteUrl;
+  private final CredentialsProvider credentialsProvider;
+  private final TransportConfigCallback configCallback;
+  private final Logger log;
+
+  public RemoteRefCreator(String remoteUrl, CredentialsProvider credentialsProvider,
+      TransportConfigCallback configCallback, Logger log) {
+    this.remoteUrl = remoteUrl;
+    this.credentialsProvider = credentialsProvider;
+    this.configCallback = configCallback;
+    this.log = log;
+  }
+
+  /**
+   * Creates an annotated tag in the remote repository.
+   *
+   * @param tagName the name of the tag.
+   * @param message the tag message.
+   * @param tagger the tagger or {@code null} to use the configured user.
+   * @param revision the revision to tag (a commit id or the name of a branch or tag of the remote) or {@code null} to
+   *          tag the remote HEAD.
+   * @param objectSources local repositories that may contain the commit to tag.
+   * @return the id of the tagged commit.
+   * @throws RefAlreadyExistsException if the remote has a tag with this name already.
+   */
+  public ObjectId createTag(final String tagName, final String message, final PersonIdent tagger, String revision,
+      List<Repository> objectSources) throws GitAPIException, IOException {
+    return createRef(Constants.R_TAGS + tagName, revision, objectSources, new RefTarget() {
+
+      @Override
+      public ObjectId create(Repository repository, ObjectId commitId) throws IOException {
+        TagBuilder tag = new TagBuilder();
+        tag.setTag(tagName);
+        tag.setMessage(message);
+        tag.setTagger(tagger != null ? tagger : new PersonIdent(repository));
+        tag.setObjectId(commitId, Constants.OBJ_COMMIT);
+        ObjectInserter inserter = repository.newObjectInserter();
+        try {
+          ObjectId tagId = inserter.insert(tag);
+          inserter.flush();
+          return tagId;
+        } finally {
+          inserter.close();
+        }
+      }
+    });
+  }
+
+  /**
+   * Creates a branch in the remote repository. No objects are created, so the push carries an empty pack if the commit
+   * is the tip of a ref of the remote.
+   *
+   * @param branchName the name of the branch.
+   * @param revision the revision to branch from (a commit id or the name of a branch or tag of the remote) or
+   *          {@code null} to branch from the remote HEAD.
+   * @param objectSources local repositories that may contain the commit to branch from.
+   * @return the id of the commit the branch points to.
+   * @throws RefAlreadyExistsException if the remote has a branch with this name already.
+   */
+  public ObjectId createBranch(String branchName, String revision, List<Repository> objectSources)
+      throws GitAPIException, IOException {
+    return createRef(Constants.R_HEADS + branchName, revision, objectSources, new RefTarget() {
+
+      @Override
+      public ObjectId create(Repository repository, ObjectId commitId) {
+        return commitId;
+      }
+    });
+  }
+
+  private ObjectId createRef(String refName, String revision, List<Repository> objectSources, RefTarget target)
+      throws GitAPIException, IOException {
+    File dir = Files.createTempDir();
+    try {
+      Repository repository = Git.init().setBare(true).setDirectory(dir).call().getRepository();
+      try {
+        Transport transport = openTransport(repository);
+        try {
+          PushConnection connection = transport.openPush();
+          try {
+            Map<String, Ref> refs = connection.getRefsMap();
+            if (refs.containsKey(refName)) {
+              throw new RefAlreadyExistsException("The remote repository contains '" + refName + "' already.");
+            }
+            ObjectId commitId = resolve(transport, refs, revision, objectSources);
+            refs = getPeeledRefs(transport, refs, commitId);
+            if (!provideCommit(repository, refs, commitId, objectSources)) {
+              // the commit must be fetched, which needs a connection of its own
+              connection.close();
+              connection = null;
+              fetchCommit(repository, transport, refs, commitId);
+              connection = transport.openPush();
+            }
+
+            push(repository, connection, target.create(repository, commitId), refName);
+            return commitId;
+          } finally {
+            if (connection != null) {
+              connection.close();
+            }
+          }
+        } finally {
+          transport.close();
+        }
+      } finally {
+        repository.close();
+      }
+    } finally {
+      FileUtils.delete(dir, FileUtils.RECURSIVE | FileUtils.RETRY | FileUtils.SKIP_MISSING);
+    }
+  }
+
+  private Transport openTransport(Repository repository) throws IOException {
+    Transport transport;
+    try {
+      transport = Transport.open(repository, new URIish(this.remoteUrl));
+    } catch (URISyntaxException e) {
+      throw new IOException("Invalid remote URL: " + this.remoteUrl, e);
+    }
+    transport.setCredentialsProvider(this.credentialsProvider);
+    if (this.configCallback != null) {
+      this.configCallback.configure(transport);
+    }
+    return transport;
+  }
+
+  /**
+   * Resolves the revision against the advertised refs of the remote, abbreviated commit ids are resolved using the
+   * local repositories.
+   */
+  private ObjectId resolve(Transport transport, Map<String, Ref> refs, String revision,
+      List<Repository> objectSources) throws IOException {
+    if (revision == null) {
+      return peel(transport, Constants.HEAD);
+    }
+
+    for (String name : Lists.newArrayList(revision, Constants.R_HEADS + revision, Constants.R_TAGS + revision)) {
+      Ref ref = refs.get(name);
+      if (ref != null) {
+        return name.startsWith(Constants.R_HEADS) ? ref.getObjectId() : peel(transport, name);
+      }
+    }
+    if (ObjectId.isId(revision)) {
+      return ObjectId.fromString(revision);
+    }
+    for (Repository source : objectSources) {
+      ObjectId id = source.resolve(revision + "^{commit}");
+      if (id != null) {
+        return id;
+      }
+    }
+    throw new IOException("Unable to resolve revision '" + revision + "' of remote repository '" + this.remoteUrl
+        + "'.");
+  }
+
+  /**
+   * Looks up the commit of HEAD or a tag. Only the fetch side advertises HEAD and the peeled ids of annotated tags.
+   */
+  private ObjectId peel(Transport transport, String refName) throws IOException {
+    Ref ref;
+    FetchConnection connection = transport.openFetch();
+    try {
+      ref = connection.getRef(refName);
+    } finally {
+      connection.close();
+    }
+    if (ref == null || ref.getObjectId() == null) {
+      throw new IOException("The remote repository '" + this.remoteUrl + "' does not advertise '" + refName + "'.");
+    }
+    return ref.getPeeledObjectId() != null ? ref.getPeeledObjectId() : ref.getObjectId();
+  }
+
+  /**
+   * The push side does not advertise the peeled ids of annotated tags. If the commit is not the target of an advertised
+   * ref but the remote has tags, the refs of the fetch side are returned, which tell whether an annotated tag points to
+   * the commit.
+   */
+  private Map<String, Ref> getPeeledRefs(Transport transport, Map<String, Ref> refs, ObjectId commitId)
+      throws IOException {
+    boolean hasTags = false;
+    for (Ref ref : refs.values()) {
+      if (pointsTo(ref, commitId)) {
+        return refs;
+      }
+      hasTags |= ref.getName().startsWith(Constants.R_TAGS);
+    }
+    if (!hasTags) {
+      return refs;
+    }
+
+    FetchConnection connection = transport.openFetch();
+    try {
+      return connection.getRefsMap();
+    } finally {
+      connection.close();
+    }
+  }
+
+  /**
+   * Makes the passed commit available in the temporary repository using the first local repository that contains it.
+   *
+   * @return {@code true} if a local repository contains the commit.
+   */
+  private boolean provideCommit(Repository repository, Map<String, Ref> refs, ObjectId commitId,
+      List<Repository> objectSources) throws IOException {
+    List<ObjectId> refTargets = Lists.newArrayList();
+    for (Ref ref : refs.values()) {
+      if (pointsTo(ref, commitId)) {
+        refTargets.add(ref.getObjectId());
+      }
+    }
+    boolean advertised = !refTargets.isEmpty();
+
+    for (Repository source : objectSources) {
+      ObjectDatabase sourceObjects = source.getObjectDatabase();
+      if (!sourceObjects.has(commitId)) {
+        continue;
+      }
+      if (advertised) {
+        // the remote has the commit and its history, it is enough to know the commit and its parents
+        if (!copyCommitObjects(source, repository, commitId, refTargets)) {
+          continue;
+        }
+      } else if (sourceObjects instanceof ObjectDirectory) {
+        Files.write(((ObjectDirectory) sourceObjects).getDirectory().getAbsolutePath() + "\n",
+            new File(repository.getDirectory(), "objects/info/alternates"), Charsets.UTF_8);
+      } else {
+        continue;
+      }
+      if (this.log.isLoggable(Level.FINE)) {
+        this.log.fine("Taking commit " + commitId.name() + " from local repository '" + source.getDirectory() + "' ("
+            + (advertised ? "commit objects only" : "all objects") + ").");
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Copies the commit object and the commit objects of its parents, the parents are marked as shallow. Marking the
+   * commit itself as shallow is not sufficient, JGit ignores the shallow state of the first commit a walk parses.<br>
+   * <br>
+   * The push only treats the commit as known to the remote if the temporary repository contains one of the advertised
+   * objects pointing to it. If only annotated tags point to the commit, their tag objects are copied as well.
+   *
+   * @param refTargets the advertised objects pointing to the commit, i.e. the commit itself or annotated tags.
+   * @return {@code false} if the source repository lacks one of the parents or all tag objects.
+   */
+  private boolean copyCommitObjects(Repository source, Repository repository, ObjectId commitId,
+      List<ObjectId> refTargets) throws IOException {
+    RevWalk walk = new RevWalk(source);
+    ObjectInserter inserter = repository.newObjectInserter();
+    try {
+      if (!refTargets.contains(commitId)) {
+        ObjectId tagId = null;
+        for (ObjectId refTarget : refTargets) {
+          if (source.hasObject(refTarget)) {
+            tagId = refTarget;
+            break;
+          }
+        }
+        if (tagId == null) {
+          return false;
+        }
+        // tags may point to other tags
+        RevObject object = walk.parseAny(tagId);
+        while (object instanceof RevTag) {
+          inserter.insert(Constants.OBJ_TAG, source.open(object, Constants.OBJ_TAG).getCachedBytes());
+          object = walk.parseAny(((RevTag) object).getObject());
+        }
+      }
+
+      RevCommit commit = walk.parseCommit(commitId);
+      StringBuilder shallow = new StringBuilder();
+      for (RevCommit parent : commit.getParents()) {
+        if (!source.hasObject(parent)) {
+          return false;
+        }
+        inserter.insert(Constants.OBJ_COMMIT, source.open(parent, Constants.OBJ_COMMIT).getCachedBytes());
+        shallow.append(parent.name()).append('\n');
+      }
+      inserter.insert(Constants.OBJ_COMMIT, source.open(commitId, Constants.OBJ_COMMIT).getCachedBytes());
+      inserter.flush();
+      if (shallow.length() > 0) {
+        Files.write(shallow, new File(repository.getDirectory(), SHALLOW_FILE), Charsets.UTF_8);
+      }
+      return true;
+    } finally {
+      inserter.close();
+      walk.close();
+    }
+  }
+
+  private void fetchCommit(Repository repository, Transport transport, Map<String, Ref> refs, ObjectId commitId)
+      throws IOException {
+    List<RefSpec> refSpecs = Lists.newArrayList();
+    for (Ref ref : refs.values()) {
+      if (pointsTo(ref, commitId) && ref.getName().startsWith(Constants.R_REFS)) {
+        refSpecs.add(new RefSpec().setForceUpdate(true).setSourceDestination(ref.getName(), ref.getName()));
+        break;
+      }
+    }
+    if (refSpecs.isEmpty()) {
+      refSpecs.add(new RefSpec().setForceUpdate(true).setSourceDestination(Constants.R_HEADS + "*",
+          Constants.R_HEADS + "*"));
+    }
+    if (this.log.isLoggable(Level.FINE)) {
+      this.log.fine("Fetching commit " + commitId.name() + " from '" + this.remoteUrl + "' (" + refSpecs + ").");
+    }
+    transport.fetch(NullProgressMonitor.INSTANCE, refSpecs);
+    if (!repository.hasObject(commitId)) {
+      throw new MissingObjectException(commitId, Constants.OBJ_COMMIT);
+    }
+  }
+
+  /**
+   * Annotated tags point to the tag object, the commit is only known as the peeled id of the ref.
+   */
+  private static boolean pointsTo(Ref ref, ObjectId commitId) {
+    return commitId.equals(ref.getObjectId()) || commitId.equals(ref.getPeeledObjectId());
+  }
+
+  private void push(Repository repository, PushConnection connection, ObjectId objectId, String refName)
+      throws IOException {
+    RemoteRefUpdate update = new RemoteRefUpdate(repository, (String) null, objectId, refName, false, null,
+        ObjectId.zeroId());
+    connection.push(NullProgressMonitor.INSTANCE, Collections.singletonMap(refName, update));
+    RemoteRefUpdate.Status status = update.getStatus();
+    if (status != RemoteRefUpdate.Status.OK && status != RemoteRefUpdate.Status.AWAITING_REPORT) {
+      throw new IOException("Unable to create '" + refName + "' in remote repository '" + this.remoteUrl + "': "
+          + status + (update.getMessage() != null ? " (" + update.getMessage() + ")" : ""));
+    }
+  }
+
+  /**
+   * Creates the object the new ref points to.
+   */
+  private interface RefTarget {
+    ObjectId create(Repository repository, ObjectId commitId) throws IOException;
+  }
+}
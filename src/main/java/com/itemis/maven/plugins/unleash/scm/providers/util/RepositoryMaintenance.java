@@ -0,0 +1,107 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.pack.PackConfig;
+
+/**
+ * Packs the objects and refs of a repository once loose objects or packs have piled up.<br>
+ * <br>
+ * Every commit, tag and merge leaves loose objects and loose refs behind. Over many releases in the same working copy
+ * this slows down the pack generation of pushes and every scan of the refs. The maintenance estimates the number of
+ * loose objects the way Git does (by counting the objects of a single fan-out directory), counts the packs and runs
+ * JGit's garbage collection if one of the thresholds is exceeded. The garbage collection packs all refs, repacks all
+ * objects into a single pack with a reachability bitmap (unless {@code pack.buildBitmaps} is disabled in the repository
+ * configuration) and prunes unreachable loose objects that are older than {@code gc.pruneExpire} (two weeks by
+ * default).
+ */
+public class RepositoryMaintenance {
+  private static final String SAMPLE_DIRECTORY = "17";
+  private static final int FAN_OUT = 256;
+
+  private final Repository repository;
+  private final int looseObjectsThreshold;
+  private final int packsThreshold;
+  private final Logger log;
+
+  /**
+   * @param looseObjectsThreshold the number of loose objects from which on the repository is maintained. Values below
+   *          {@code 1} disable this trigger.
+   * @param packsThreshold the number of packs from which on the repository is maintained. Values below {@code 1}
+   *          disable this trigger.
+   */
+  public RepositoryMaintenance(Repository repository, int looseObjectsThreshold, int packsThreshold, Logger log) {
+    this.repository = repository;
+    this.looseObjectsThreshold = looseObjectsThreshold;
+    this.packsThreshold = packsThreshold;
+    this.log = log;
+  }
+
+  /**
+   * @return {@code true} if the estimated number of loose objects or the number of packs reaches its threshold.
+   */
+  public boolean isNeeded() {
+    if (!(this.repository instanceof FileRepository)) {
+      return false;
+    }
+    ObjectDirectory objectDirectory = ((FileRepository) this.repository).getObjectDatabase();
+    if (this.looseObjectsThreshold > 0
+        && estimateLooseObjects(objectDirectory.getDirectory()) >= this.looseObjectsThreshold) {
+      return true;
+    }
+    return this.packsThreshold > 0 && objectDirectory.getPacks().size() >= this.packsThreshold;
+  }
+
+  /**
+   * Runs the garbage collection if one of the thresholds is reached.
+   *
+   * @return {@code true} if the repository has been maintained.
+   */
+  public boolean runIfNeeded() throws IOException {
+    if (!isNeeded()) {
+      return false;
+    }
+
+    if (this.log.isLoggable(Level.INFO)) {
+      this.log.info("Packing objects and refs of repository '" + this.repository.getDirectory() + "'.");
+    }
+    long start = System.currentTimeMillis();
+    GC gc = new GC((FileRepository) this.repository);
+    gc.setPackConfig(new PackConfig(this.repository));
+    gc.setProgressMonitor(NullProgressMonitor.INSTANCE);
+    try {
+      gc.gc();
+    } catch (ParseException e) {
+      throw new IOException("Invalid prune expiry configured for repository '" + this.repository.getDirectory() + "'.",
+          e);
+    }
+    if (this.log.isLoggable(Level.FINE)) {
+      this.log.fine("Repository maintenance finished after " + (System.currentTimeMillis() - start) + "ms.");
+    }
+    return true;
+  }
+
+  private static int estimateLooseObjects(File objectsDirectory) {
+    String[] names = new File(objectsDirectory, SAMPLE_DIRECTORY).list();
+    if (names == null) {
+      return 0;
+    }
+    int count = 0;
+    for (String name : names) {
+      if (ObjectId.isId(SAMPLE_DIRECTORY + name)) {
+        count++;
+      }
+    }
+    return count * FAN_OUT;
+  }
+}
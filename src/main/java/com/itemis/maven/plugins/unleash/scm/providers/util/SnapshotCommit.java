@@ -0,0 +1,107 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.hooks.Hooks;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Creates a commit of the current working copy state without touching HEAD, the index or the working tree.<br>
+ * <br>
+ * Tags and branches of the working copy used to be created by committing all changes, creating the ref and resetting
+ * the commit again, which writes the index twice and scans the working tree several times. This class builds the tree
+ * of the working copy in-core from the index and the changed files of a status snapshot and writes the tree and a
+ * commit on top of HEAD directly into the object database. The caller can then point a tag or branch at the commit.
+ * The pre-commit and commit-msg hooks are run like for a regular commit.
+ */
+public class SnapshotCommit {
+  private final Repository repository;
+  private final int packInsertThreshold;
+
+  /**
+   * @param packInsertThreshold the number of new objects from which on the objects of the commit are written into a
+   *          pack, see {@link PackingObjectInserter}.
+   */
+  public SnapshotCommit(Repository repository, int packInsertThreshold) {
+    this.repository = repository;
+    this.packInsertThreshold = packInsertThreshold;
+  }
+
+  /**
+   * Creates the commit of the working copy state.
+   *
+   * @param pathsToAdd all files that are new, modified or conflicting in the working tree and shall be part of the
+   *          snapshot.
+   * @param pathsToRemove all files that are missing in the working tree.
+   * @param message the commit message.
+   * @param committer the committer and author of the commit.
+   * @return the new commit or the HEAD commit if the working copy state does not differ from HEAD.
+   */
+  public RevCommit create(Set<String> pathsToAdd, Set<String> pathsToRemove, String message, PersonIdent committer)
+      throws GitAPIException, IOException {
+    ObjectId headId = this.repository.resolve(Constants.HEAD + "^{commit}");
+    DirCache index = this.repository.readDirCache();
+    ObjectInserter inserter = PackingObjectInserter.create(this.repository, pathsToAdd.size() + 1,
+        this.packInsertThreshold);
+    RevWalk revWalk = new RevWalk(this.repository);
+    try {
+      Map<String, DirCacheEntry> addedEntries = PartialCommit.readWorkingTreeEntries(this.repository, index,
+          pathsToAdd, inserter);
+
+      // the index with the working tree state of the changed files, conflict stages are replaced by the file content
+      DirCache snapshot = DirCache.newInCore();
+      DirCacheBuilder builder = snapshot.builder();
+      for (int i = 0; i < index.getEntryCount(); i++) {
+        DirCacheEntry entry = index.getEntry(i);
+        String path = entry.getPathString();
+        if (entry.getStage() == DirCacheEntry.STAGE_0 && !addedEntries.containsKey(path)
+            && !pathsToRemove.contains(path)) {
+          builder.add(entry);
+        }
+      }
+      for (DirCacheEntry entry : addedEntries.values()) {
+        builder.add(entry);
+      }
+      builder.finish();
+
+      ObjectId treeId = snapshot.writeTree(inserter);
+      if (headId != null) {
+        RevCommit head = revWalk.parseCommit(headId);
+        if (treeId.equals(head.getTree())) {
+          inserter.flush();
+          return head;
+        }
+      }
+
+      Hooks.preCommit(this.repository, null).call();
+      String commitMessage = Hooks.commitMsg(this.repository, null).setCommitMessage(message).call();
+      CommitBuilder commit = new CommitBuilder();
+      commit.setCommitter(committer);
+      commit.setAuthor(committer);
+      commit.setMessage(commitMessage);
+      if (headId != null) {
+        commit.setParentId(headId);
+      }
+      commit.setTreeId(treeId);
+      ObjectId commitId = inserter.insert(commit);
+      inserter.flush();
+      return revWalk.parseCommit(commitId);
+    } finally {
+      revWalk.close();
+      inserter.close();
+    }
+  }
+}
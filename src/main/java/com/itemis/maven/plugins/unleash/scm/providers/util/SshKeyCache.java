@@ -0,0 +1,123 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.jcraft.jsch.HostKeyRepository;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.KeyPair;
+
+/**
+ * Process-wide cache of parsed known_hosts files and (decrypted) private keys. File based entries are invalidated as
+ * soon as the modification time or the size of the file changes, so after the first connection setting up an SSH
+ * client requires neither file parsing nor key decryption.<br>
+ * <br>
+ * Only key pairs that are not encrypted (anymore) are cached. JSch decrypts the key pair of an identity in place once
+ * it gets a passphrase, so a shared encrypted key pair would end up decrypted for every caller, whatever passphrase
+ * they have. Encrypted key pairs are therefore loaded anew for each call.
+ */
+public final class SshKeyCache {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final Map<String, Entry<HostKeyRepository>> KNOWN_HOSTS = Maps.newHashMap();
+  private static final Map<String, Entry<KeyPair>> KEY_PAIRS = Maps.newHashMap();
+
+  private SshKeyCache() {
+    // no instances
+  }
+
+  /**
+   * @param jsch the client used for parsing the file if it is not cached yet.
+   * @param knownHosts the known_hosts file.
+   * @return an indexed host key repository holding the entries of the file.
+   */
+  public static synchronized HostKeyRepository getKnownHosts(JSch jsch, File knownHosts) throws JSchException {
+    String path = knownHosts.getAbsolutePath();
+    String fingerprint = fingerprint(knownHosts);
+    Entry<HostKeyRepository> entry = KNOWN_HOSTS.get(path);
+    if (entry == null || !Objects.equal(fingerprint, entry.fingerprint)) {
+      jsch.setKnownHosts(path);
+      entry = new Entry<HostKeyRepository>(fingerprint,
+          new IndexedHostKeyRepository(jsch.getHostKeyRepository()));
+      KNOWN_HOSTS.put(path, entry);
+    }
+    return entry.value;
+  }
+
+  /**
+   * @param jsch the client used for parsing the key if it is not cached yet.
+   * @param privateKey the private key file.
+   * @param passphrase the passphrase for decrypting the key or {@code null} if the key shall not be decrypted.
+   * @return the key pair, decrypted if a matching passphrase was passed. Encrypted key pairs are never shared with
+   *         other callers.
+   */
+  public static synchronized KeyPair getKeyPair(JSch jsch, File privateKey, String passphrase)
+      throws JSchException {
+    String key = "file:" + privateKey.getAbsolutePath() + ':' + digest(passphrase);
+    String fingerprint = fingerprint(privateKey);
+    Entry<KeyPair> entry = KEY_PAIRS.get(key);
+    if (entry == null || !Objects.equal(fingerprint, entry.fingerprint)) {
+      KeyPair keyPair = KeyPair.load(jsch, privateKey.getAbsolutePath());
+      if (!decrypt(keyPair, passphrase)) {
+        return keyPair;
+      }
+      entry = new Entry<KeyPair>(fingerprint, keyPair);
+      KEY_PAIRS.put(key, entry);
+    }
+    return entry.value;
+  }
+
+  /**
+   * @param jsch the client used for parsing the key if it is not cached yet.
+   * @param privateKey the content of the private key.
+   * @param passphrase the passphrase for decrypting the key or {@code null} if the key shall not be decrypted.
+   * @return the key pair, decrypted if a matching passphrase was passed. Encrypted key pairs are never shared with
+   *         other callers.
+   */
+  public static synchronized KeyPair getKeyPair(JSch jsch, String privateKey, String passphrase)
+      throws JSchException {
+    String key = "inline:" + digest(privateKey) + ':' + digest(passphrase);
+    Entry<KeyPair> entry = KEY_PAIRS.get(key);
+    if (entry == null) {
+      KeyPair keyPair = KeyPair.load(jsch, privateKey.getBytes(), null);
+      if (!decrypt(keyPair, passphrase)) {
+        return keyPair;
+      }
+      entry = new Entry<KeyPair>(null, keyPair);
+      KEY_PAIRS.put(key, entry);
+    }
+    return entry.value;
+  }
+
+  /**
+   * @return {@code true} if the key pair is not encrypted (anymore) and may be cached.
+   */
+  private static boolean decrypt(KeyPair keyPair, String passphrase) {
+    if (passphrase != null && keyPair.isEncrypted()) {
+      keyPair.decrypt(passphrase.getBytes());
+    }
+    return !keyPair.isEncrypted();
+  }
+
+  private static String fingerprint(File file) {
+    return file.lastModified() + ":" + file.length();
+  }
+
+  private static String digest(String s) {
+    return s == null ? "" : Hashing.sha256().hashString(s, UTF8).toString();
+  }
+
+  private static class Entry<T> {
+    private final String fingerprint;
+    private final T value;
+
+    private Entry(String fingerprint, T value) {
+      this.fingerprint = fingerprint;
+      this.value = value;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.jgit.api.TransportConfigCallback;
+import org.eclipse.jgit.api.errors.InvalidRemoteException;
+import org.eclipse.jgit.api.errors.TransportException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.Transport.Operation;
+import org.eclipse.jgit.transport.URIish;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Keeps JGit {@link Transport transports} open between remote operations of one provider lifetime. A transport that
+ * stays open keeps its underlying connection (e.g. the SSH session) alive, so subsequent ls-remote, fetch and push
+ * operations against the same remote URI skip connection setup and authentication.<br>
+ * <br>
+ * Like {@link Transport#openAll(Repository, RemoteConfig, Operation)} a push is sent to every push URI of the remote
+ * (or every URI if there are no push URIs), while fetch operations use the first URI only. A reused transport gets the
+ * current configuration of the remote applied before each operation, so changed fetch or push refspecs take effect
+ * like on a freshly opened transport.<br>
+ * <br>
+ * Transports that have been idle for longer than the configured timeout are closed before being handed out again.
+ * JGit offers no way to probe the connection of an idle transport, so there is no health check before reuse. Instead a
+ * reused transport that fails a fetch operation is considered broken; it is discarded and the operation is retried
+ * once on a freshly opened transport. Pushes are never retried since the remote may have applied them partially.<br>
+ * <br>
+ * The pool counts the remote exchanges it runs, so callers can report the round trips an operation needed.
+ */
+public class TransportPool {
+  private final long idleTimeout;
+  private final CredentialsProvider credentialsProvider;
+  private final TransportConfigCallback configCallback;
+  private final Logger log;
+  private final Map<String, PooledTransport> transports;
+  private long roundTrips;
+
+  /**
+   * @param idleTimeout the time in milliseconds a transport may stay unused before it is closed. {@code 0} disables
+   *          pooling and closes each transport right after its operation.
+   */
+  public TransportPool(long idleTimeout, CredentialsProvider credentialsProvider,
+      TransportConfigCallback configCallback, Logger log) {
+    this.idleTimeout = idleTimeout;
+    this.credentialsProvider = credentialsProvider;
+    this.configCallback = configCallback;
+    this.log = log;
+    this.transports = Maps.newHashMap();
+  }
+
+  /**
+   * Runs the passed operation with a (possibly reused) transport to the first URI of the remote.
+   *
+   * @param repository the local repository.
+   * @param remoteName the name of the configured remote.
+   * @param operation the kind of operation which determines the URI to use (fetch or push URI).
+   * @param callback the actual operation.
+   * @return the result of the callback.
+   */
+  public synchronized <T> T execute(Repository repository, String remoteName, Operation operation,
+      TransportCallback<T> callback) throws InvalidRemoteException, TransportException {
+    RemoteConfig remoteConfig = getRemoteConfig(repository, remoteName);
+    return execute(repository, remoteConfig, getUris(remoteConfig, operation).get(0), operation, callback);
+  }
+
+  /**
+   * Runs the passed operation with a (possibly reused) transport to each URI of the remote, just like JGit's
+   * {@code FetchCommand} and {@code PushCommand} do using {@link Transport#openAll(Repository, RemoteConfig,
+   * Operation)}.
+   *
+   * @param repository the local repository.
+   * @param remoteName the name of the configured remote.
+   * @param operation the kind of operation which determines the URIs to use (fetch or push URIs).
+   * @param callback the actual operation.
+   * @return the results of the callback, one per URI.
+   */
+  public synchronized <T> List<T> executeAll(Repository repository, String remoteName, Operation operation,
+      TransportCallback<T> callback) throws InvalidRemoteException, TransportException {
+    RemoteConfig remoteConfig = getRemoteConfig(repository, remoteName);
+    List<T> results = Lists.newArrayList();
+    for (URIish uri : getUris(remoteConfig, operation)) {
+      results.add(execute(repository, remoteConfig, uri, operation, callback));
+    }
+    return results;
+  }
+
+  private <T> T execute(Repository repository, RemoteConfig remoteConfig, URIish uri, Operation operation,
+      TransportCallback<T> callback) throws TransportException {
+    evictIdleTransports();
+
+    String key = repository.getDirectory().getAbsolutePath() + '|' + uri;
+    PooledTransport pooled = this.transports.remove(key);
+    if (pooled != null) {
+      // the remote configuration may have been changed since the transport has been opened
+      pooled.transport.applyConfig(remoteConfig);
+      if (operation != Operation.FETCH) {
+        // the remote may have applied a failed push partially, so it must not be sent again
+        return runOrClose(pooled, callback, key);
+      }
+      try {
+        return run(pooled, callback, key);
+      } catch (IOException e) {
+        if (this.log.isLoggable(Level.FINE)) {
+          this.log.fine("Discarding broken pooled transport to " + uri + " (" + e.getMessage() + ").");
+        }
+        pooled.close();
+      }
+    }
+
+    try {
+      pooled = new PooledTransport(Transport.open(repository, uri, remoteConfig.getName()));
+    } catch (IOException e) {
+      throw new TransportException(e.getMessage(), e);
+    }
+    pooled.transport.applyConfig(remoteConfig);
+    pooled.transport.setCredentialsProvider(this.credentialsProvider);
+    if (this.configCallback != null) {
+      this.configCallback.configure(pooled.transport);
+    }
+    return runOrClose(pooled, callback, key);
+  }
+
+  /**
+   * @return the number of remote exchanges (ls-remote, fetch or push) run so far, including retries.
+   */
+  public synchronized long getRoundTrips() {
+    return this.roundTrips;
+  }
+
+  /**
+   * Closes all pooled transports.
+   */
+  public synchronized void close() {
+    for (PooledTransport pooled : this.transports.values()) {
+      pooled.close();
+    }
+    this.transports.clear();
+  }
+
+  private <T> T run(PooledTransport pooled, TransportCallback<T> callback, String key) throws IOException {
+    this.roundTrips++;
+    T result = callback.run(pooled.transport);
+    if (this.idleTimeout == 0) {
+      pooled.close();
+    } else {
+      pooled.lastUsed = System.currentTimeMillis();
+      this.transports.put(key, pooled);
+    }
+    return result;
+  }
+
+  private <T> T runOrClose(PooledTransport pooled, TransportCallback<T> callback, String key)
+      throws TransportException {
+    try {
+      return run(pooled, callback, key);
+    } catch (IOException e) {
+      pooled.close();
+      throw new TransportException(e.getMessage(), e);
+    }
+  }
+
+  private void evictIdleTransports() {
+    if (this.idleTimeout < 0) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    for (Iterator<PooledTransport> i = this.transports.values().iterator(); i.hasNext();) {
+      PooledTransport pooled = i.next();
+      if (now - pooled.lastUsed >= this.idleTimeout) {
+        pooled.close();
+        i.remove();
+      }
+    }
+  }
+
+  private RemoteConfig getRemoteConfig(Repository repository, String remoteName) throws InvalidRemoteException {
+    try {
+      return new RemoteConfig(repository.getConfig(), remoteName);
+    } catch (URISyntaxException e) {
+      throw new InvalidRemoteException("Invalid remote: " + remoteName, e);
+    }
+  }
+
+  /**
+   * @return the push URIs of the remote for a push if there are any, the URIs of the remote otherwise.
+   */
+  private List<URIish> getUris(RemoteConfig remoteConfig, Operation operation) throws InvalidRemoteException {
+    List<URIish> uris = remoteConfig.getURIs();
+    if (operation == Operation.PUSH && !remoteConfig.getPushURIs().isEmpty()) {
+      uris = remoteConfig.getPushURIs();
+    }
+    if (uris.isEmpty()) {
+      throw new InvalidRemoteException("Invalid remote: " + remoteConfig.getName());
+    }
+    return uris;
+  }
+
+  /**
+   * A remote operation that is executed using a pooled transport.
+   */
+  public interface TransportCallback<T> {
+    T run(Transport transport) throws IOException;
+  }
+
+  private static class PooledTransport {
+    private final Transport transport;
+    private long lastUsed;
+
+    private PooledTransport(Transport transport) {
+      this.transport = transport;
+      this.lastUsed = System.currentTimeMillis();
+    }
+
+    private void close() {
+      this.transport.close();
+    }
+  }
+}
@@ -0,0 +1,467 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.ignore.IgnoreNode;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.CoreConfig;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FS;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+
+/**
+ * Finds the untracked files of a working tree without descending into ignored directories and without reading
+ * directories that did not change since the last scan.<br>
+ * <br>
+ * For each directory the cache stores the modification time of the directory, the stat data of its
+ * {@code .gitignore} file and the names of all non-ignored files, subdirectories and nested repositories. As long as
+ * the modification time and the {@code .gitignore} file of a directory are unchanged the stored names are reused, so a
+ * scan of an unchanged working tree needs three stats per directory (the directory, its {@code .gitignore} and its
+ * {@code .git}) instead of reading every directory and matching every file against the ignore rules. The {@code .git}
+ * of each subdirectory is checked on every scan since creating or removing a nested repository does not change the
+ * modification time of the parent directory. Whether a file is tracked is decided against the current index on each
+ * scan, so changes of the index do not invalidate the cache.<br>
+ * <br>
+ * A changed {@code .gitignore} file invalidates the whole subtree below its directory, changed global excludes
+ * invalidate the whole cache. Directories modified shortly before the scan are not trusted on the next scan since
+ * further modifications within the timestamp resolution would go unnoticed. The cache is stored in the git directory.
+ */
+public class UntrackedCache {
+  private static final String CACHE_FILE = "unleash-untracked-cache";
+  private static final int VERSION = 2;
+  private static final long RACY_INTERVAL = 2000;
+
+  private final Repository repository;
+  private final File cacheFile;
+  private final Map<File, IgnoreNode> globalNodes;
+  private Map<String, Directory> directories;
+  private String fingerprint;
+
+  public UntrackedCache(Repository repository) {
+    this.repository = repository;
+    this.cacheFile = new File(repository.getDirectory(), CACHE_FILE);
+    this.globalNodes = Maps.newHashMap();
+  }
+
+  /**
+   * Scans the working tree for untracked files.
+   *
+   * @param index the index deciding which files are tracked.
+   * @param paths the paths (files or directories) to restrict the result to or an empty collection for all paths.
+   * @return the untracked files and the topmost directories containing only untracked files.
+   */
+  public Result scan(DirCache index, Collection<String> paths) throws IOException {
+    if (this.directories == null) {
+      load();
+    }
+    String currentFingerprint = getGlobalFingerprint();
+    if (!currentFingerprint.equals(this.fingerprint)) {
+      this.directories.clear();
+      this.globalNodes.clear();
+      this.fingerprint = currentFingerprint;
+    }
+
+    Set<String> trackedFiles = Sets.newHashSetWithExpectedSize(index.getEntryCount());
+    Set<String> trackedDirectories = Sets.newHashSet();
+    for (int i = 0; i < index.getEntryCount(); i++) {
+      String path = index.getEntry(i).getPathString();
+      trackedFiles.add(path);
+      for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+        if (!trackedDirectories.add(path.substring(0, slash))) {
+          break;
+        }
+      }
+    }
+
+    Scan scan = new Scan(trackedFiles, trackedDirectories, paths);
+    scan.scan("", null, false, false);
+    if (scan.changed || scan.directories.size() != this.directories.size()) {
+      this.directories = scan.directories;
+      store();
+    }
+    return scan.result;
+  }
+
+  private void load() {
+    this.directories = Maps.newHashMap();
+    if (!this.cacheFile.isFile()) {
+      return;
+    }
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.cacheFile)));
+      if (in.readInt() != VERSION) {
+        return;
+      }
+      String storedFingerprint = in.readUTF();
+      int count = in.readInt();
+      Map<String, Directory> stored = Maps.newHashMapWithExpectedSize(count);
+      for (int i = 0; i < count; i++) {
+        String path = in.readUTF();
+        stored.put(path, new Directory(in.readLong(), in.readUTF(), in.readBoolean(), readNames(in), readNames(in),
+            readNames(in)));
+      }
+      this.directories = stored;
+      this.fingerprint = storedFingerprint;
+    } catch (IOException e) {
+      // a damaged cache is just rebuilt
+    } finally {
+      Closeables.closeQuietly(in);
+    }
+  }
+
+  private void store() {
+    File tmp = new File(this.cacheFile.getParentFile(), CACHE_FILE + ".tmp");
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+      try {
+        out.writeInt(VERSION);
+        out.writeUTF(this.fingerprint);
+        out.writeInt(this.directories.size());
+        for (Map.Entry<String, Directory> entry : this.directories.entrySet()) {
+          Directory dir = entry.getValue();
+          out.writeUTF(entry.getKey());
+          out.writeLong(dir.lastModified);
+          out.writeUTF(dir.ignoreFileStat);
+          out.writeBoolean(dir.racy);
+          writeNames(out, dir.files);
+          writeNames(out, dir.subdirectories);
+          writeNames(out, dir.repositories);
+        }
+      } finally {
+        out.close();
+      }
+      Files.move(tmp.toPath(), this.cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      // the cache is rebuilt on the next scan
+      tmp.delete();
+    }
+  }
+
+  private static List<String> readNames(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    List<String> names = Lists.newArrayListWithCapacity(count);
+    for (int i = 0; i < count; i++) {
+      names.add(in.readUTF());
+    }
+    return names;
+  }
+
+  private static void writeNames(DataOutputStream out, List<String> names) throws IOException {
+    out.writeInt(names.size());
+    for (String name : names) {
+      out.writeUTF(name);
+    }
+  }
+
+  private String getGlobalFingerprint() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(getStat(new File(this.repository.getDirectory(), Constants.INFO_EXCLUDE)));
+    File excludesFile = getExcludesFile();
+    if (excludesFile != null) {
+      sb.append(';').append(excludesFile.getAbsolutePath()).append(':').append(getStat(excludesFile));
+    }
+    return sb.toString();
+  }
+
+  private File getExcludesFile() {
+    String path = this.repository.getConfig().get(CoreConfig.KEY).getExcludesFile();
+    if (path == null) {
+      return null;
+    }
+    if (path.startsWith("~/")) {
+      return this.repository.getFS().resolve(this.repository.getFS().userHome(), path.substring(2));
+    }
+    return this.repository.getFS().resolve(null, path);
+  }
+
+  private static String getStat(File file) {
+    try {
+      return Files.getLastModifiedTime(file.toPath(), LinkOption.NOFOLLOW_LINKS).toMillis() + ":" + file.length();
+    } catch (IOException e) {
+      return "-";
+    }
+  }
+
+  private static long getLastModified(File file) {
+    try {
+      return Files.getLastModifiedTime(file.toPath(), LinkOption.NOFOLLOW_LINKS).toMillis();
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  private static boolean isRepository(File directory) {
+    return new File(directory, Constants.DOT_GIT).exists();
+  }
+
+  private static String concat(String dir, String name) {
+    return dir.length() == 0 ? name : dir + "/" + name;
+  }
+
+  /**
+   * The outcome of a scan.
+   */
+  public static class Result {
+    private final Set<String> untrackedFiles = Sets.newHashSet();
+    private final Set<String> untrackedFolders = Sets.newHashSet();
+
+    public Set<String> getUntrackedFiles() {
+      return this.untrackedFiles;
+    }
+
+    public Set<String> getUntrackedFolders() {
+      return this.untrackedFolders;
+    }
+  }
+
+  private class Scan {
+    private final Set<String> trackedFiles;
+    private final Set<String> trackedDirectories;
+    private final Set<String> paths;
+    private final long start;
+    private final Map<String, Directory> directories;
+    private final Result result;
+    private boolean changed;
+
+    private Scan(Set<String> trackedFiles, Set<String> trackedDirectories, Collection<String> paths) {
+      this.trackedFiles = trackedFiles;
+      this.trackedDirectories = trackedDirectories;
+      this.paths = paths.isEmpty() ? null : Sets.newHashSet(paths);
+      this.start = System.currentTimeMillis();
+      this.directories = Maps.newHashMap();
+      this.result = new Result();
+    }
+
+    /**
+     * @param parentRules the ignore rules of the parent directory or {@code null} for the root directory.
+     * @param force whether the cached entries of this directory and all of its subdirectories must not be used.
+     * @param inUntrackedFolder whether a parent directory has already been reported as untracked folder.
+     * @return whether the directory contains untracked files.
+     */
+    private boolean scan(String path, Rules parentRules, boolean force, boolean inUntrackedFolder)
+        throws IOException {
+      File workTree = UntrackedCache.this.repository.getWorkTree();
+      File file = path.length() == 0 ? workTree : new File(workTree, path);
+      long lastModified = getLastModified(file);
+      if (lastModified < 0) {
+        return false;
+      }
+      String ignoreFileStat = getStat(new File(file, Constants.DOT_GIT_IGNORE));
+      Rules rules = new Rules(parentRules, file, path);
+
+      Directory previous = UntrackedCache.this.directories.get(path);
+      Directory dir;
+      if (!force && previous != null && !previous.racy && previous.lastModified == lastModified
+          && previous.ignoreFileStat.equals(ignoreFileStat) && hasSameRepositories(file, previous)) {
+        dir = previous;
+      } else {
+        dir = list(path, file, rules, lastModified, ignoreFileStat);
+        this.changed = true;
+      }
+      this.directories.put(path, dir);
+      boolean forceSubdirectories = force || previous == null || !previous.ignoreFileStat.equals(ignoreFileStat);
+
+      boolean containsUntracked = false;
+      for (String name : Iterables.concat(dir.files, dir.repositories)) {
+        String filePath = concat(path, name);
+        if (!this.trackedFiles.contains(filePath)) {
+          containsUntracked = true;
+          if (isIncluded(filePath)) {
+            this.result.untrackedFiles.add(filePath);
+          }
+        }
+      }
+      for (String name : dir.subdirectories) {
+        String subdirectoryPath = concat(path, name);
+        boolean untrackedFolder = !inUntrackedFolder && !this.trackedDirectories.contains(subdirectoryPath);
+        if (scan(subdirectoryPath, rules, forceSubdirectories, inUntrackedFolder || untrackedFolder)) {
+          containsUntracked = true;
+          if (untrackedFolder && isIncluded(subdirectoryPath)) {
+            this.result.untrackedFolders.add(subdirectoryPath);
+          }
+        }
+      }
+      return containsUntracked;
+    }
+
+    private Directory list(String path, File file, Rules rules, long lastModified, String ignoreFileStat)
+        throws IOException {
+      List<String> files = Lists.newArrayList();
+      List<String> subdirectories = Lists.newArrayList();
+      List<String> repositories = Lists.newArrayList();
+      String[] names = file.list();
+      if (names != null) {
+        for (String name : names) {
+          if (Constants.DOT_GIT.equals(name)) {
+            continue;
+          }
+          File child = new File(file, name);
+          boolean isDirectory = Files.isDirectory(child.toPath(), LinkOption.NOFOLLOW_LINKS);
+          if (rules.isIgnored(concat(path, name), isDirectory)) {
+            continue;
+          }
+          if (!isDirectory) {
+            files.add(name);
+          } else if (isRepository(child)) {
+            // nested repositories are reported as a whole like files
+            repositories.add(name);
+          } else {
+            subdirectories.add(name);
+          }
+        }
+      }
+      return new Directory(lastModified, ignoreFileStat, lastModified >= this.start - RACY_INTERVAL, files,
+          subdirectories, repositories);
+    }
+
+    /**
+     * Checks whether the subdirectories that are nested repositories are still the ones the cached entry knows.
+     */
+    private boolean hasSameRepositories(File file, Directory cached) {
+      for (String name : cached.subdirectories) {
+        if (isRepository(new File(file, name))) {
+          return false;
+        }
+      }
+      for (String name : cached.repositories) {
+        if (!isRepository(new File(file, name))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private boolean isIncluded(String path) {
+      if (this.paths == null) {
+        return true;
+      }
+      String p = path;
+      while (true) {
+        if (this.paths.contains(p)) {
+          return true;
+        }
+        int slash = p.lastIndexOf('/');
+        if (slash < 0) {
+          return false;
+        }
+        p = p.substring(0, slash);
+      }
+    }
+  }
+
+  /**
+   * The ignore rules applying to the entries of one directory. The {@code .gitignore} files are parsed lazily since
+   * unchanged directories do not need any rules.
+   */
+  private class Rules {
+    private final Rules parent;
+    private final File directory;
+    private final String path;
+    private IgnoreNode node;
+    private boolean loaded;
+
+    private Rules(Rules parent, File directory, String path) {
+      this.parent = parent;
+      this.directory = directory;
+      this.path = path;
+    }
+
+    private boolean isIgnored(String entryPath, boolean isDirectory) throws IOException {
+      for (Rules rules = this; rules != null; rules = rules.parent) {
+        IgnoreNode ignoreNode = rules.getNode();
+        if (ignoreNode != null) {
+          String relativePath = rules.path.length() == 0 ? entryPath : entryPath.substring(rules.path.length() + 1);
+          Boolean ignored = ignoreNode.checkIgnored(relativePath, isDirectory);
+          if (ignored != null) {
+            return ignored.booleanValue();
+          }
+        }
+      }
+
+      File exclude = new File(UntrackedCache.this.repository.getDirectory(), Constants.INFO_EXCLUDE);
+      Boolean ignored = checkIgnored(exclude, entryPath, isDirectory);
+      if (ignored == null) {
+        ignored = checkIgnored(getExcludesFile(), entryPath, isDirectory);
+      }
+      return ignored != null && ignored.booleanValue();
+    }
+
+    private IgnoreNode getNode() throws IOException {
+      if (!this.loaded) {
+        this.node = parse(new File(this.directory, Constants.DOT_GIT_IGNORE));
+        this.loaded = true;
+      }
+      return this.node;
+    }
+  }
+
+  private Boolean checkIgnored(File ignoreFile, String entryPath, boolean isDirectory) throws IOException {
+    if (ignoreFile == null) {
+      return null;
+    }
+    IgnoreNode node;
+    if (this.globalNodes.containsKey(ignoreFile)) {
+      node = this.globalNodes.get(ignoreFile);
+    } else {
+      node = parse(ignoreFile);
+      this.globalNodes.put(ignoreFile, node);
+    }
+    return node != null ? node.checkIgnored(entryPath, isDirectory) : null;
+  }
+
+  private static IgnoreNode parse(File ignoreFile) throws IOException {
+    if (!FS.DETECTED.exists(ignoreFile)) {
+      return null;
+    }
+    IgnoreNode node = new IgnoreNode();
+    InputStream in = new FileInputStream(ignoreFile);
+    try {
+      node.parse(in);
+    } finally {
+      in.close();
+    }
+    return node.getRules().isEmpty() ? null : node;
+  }
+
+  private static class Directory {
+    private final long lastModified;
+    private final String ignoreFileStat;
+    private final boolean racy;
+    private final List<String> files;
+    private final List<String> subdirectories;
+    private final List<String> repositories;
+
+    private Directory(long lastModified, String ignoreFileStat, boolean racy, List<String> files,
+        List<String> subdirectories, List<String> repositories) {
+      this.lastModified = lastModified;
+      this.ignoreFileStat = ignoreFileStat;
+      this.racy = racy;
+      this.files = files;
+      this.subdirectories = subdirectories;
+      this.repositories = repositories;
+    }
+  }
+}
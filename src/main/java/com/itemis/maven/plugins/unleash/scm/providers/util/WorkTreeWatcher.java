@@ -0,0 +1,339 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Tracks the paths of the working tree that change while the provider is alive, so that status computations can be
+ * restricted to these paths instead of scanning the whole working tree.<br>
+ * <br>
+ * The watcher registers all directories of the working tree that are not ignored or contain tracked files with a
+ * {@link WatchService} and records the paths of all events. The first status computation is a full scan that defines
+ * the baseline (the paths that are dirty already); afterwards the candidates for dirty paths are the baseline paths
+ * plus all paths changed since.<br>
+ * <br>
+ * Whenever the tracker cannot guarantee complete information it answers {@code null} which requires a full scan and a
+ * new baseline. This is the case if the event queue overflowed, too many paths changed, a {@code .gitignore} file
+ * changed or the registration of the directories failed. Events are only trusted on Linux, where all events are
+ * delivered in order through one inotify instance; this allows synchronizing with the event queue by creating a marker
+ * file in the git directory and waiting for its event. Other platforms use polling implementations and are not
+ * supported.
+ */
+public class WorkTreeWatcher {
+  private static final String SYNC_MARKER_PREFIX = "unleash-watch-sync-";
+  private static final long SYNC_TIMEOUT = 5000;
+  private static final int MAX_CHANGED_PATHS = 10000;
+
+  private final Repository repository;
+  private final Path workTree;
+  private final Path gitDir;
+  private final WatchService watchService;
+  private final Logger log;
+  private final Map<WatchKey, Path> keys;
+  private final Set<String> changedPaths;
+  private final Set<String> seenMarkers;
+  private Set<String> baseline;
+  private ObjectId baselineHead;
+  private boolean ready;
+  private boolean overflow;
+  private boolean failed;
+
+  private WorkTreeWatcher(Repository repository, WatchService watchService, Logger log) {
+    this.repository = repository;
+    this.workTree = repository.getWorkTree().toPath().toAbsolutePath();
+    this.gitDir = repository.getDirectory().toPath().toAbsolutePath();
+    this.watchService = watchService;
+    this.log = log;
+    this.keys = Maps.newHashMap();
+    this.changedPaths = Sets.newHashSet();
+    this.seenMarkers = Sets.newHashSet();
+  }
+
+  /**
+   * Starts watching the working tree of the passed repository. The directories are registered in the background, until
+   * this has finished the watcher requests full scans.
+   *
+   * @return the watcher or {@code null} if the platform does not support reliable watching.
+   */
+  public static WorkTreeWatcher start(Repository repository, Logger log) {
+    if (repository.isBare()) {
+      return null;
+    }
+    WatchService watchService;
+    try {
+      watchService = FileSystems.getDefault().newWatchService();
+    } catch (IOException e) {
+      if (log.isLoggable(Level.WARNING)) {
+        log.warning("Unable to watch the working tree (" + e.getMessage() + ").");
+      }
+      return null;
+    }
+    if (!watchService.getClass().getName().endsWith("LinuxWatchService")) {
+      if (log.isLoggable(Level.WARNING)) {
+        log.warning("Watching the working tree is not supported on this platform, status computations scan the whole"
+            + " working tree.");
+      }
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        // ignore
+      }
+      return null;
+    }
+
+    final WorkTreeWatcher watcher = new WorkTreeWatcher(repository, watchService, log);
+    Thread thread = new Thread(new Runnable() {
+
+      @Override
+      public void run() {
+        watcher.run();
+      }
+    }, "unleash-git-worktree-watcher");
+    thread.setDaemon(true);
+    thread.start();
+    return watcher;
+  }
+
+  /**
+   * @return the paths (relative to the working tree) that may be dirty, which are the dirty paths of the baseline and
+   *         all paths changed since, or {@code null} if a full scan is required.
+   */
+  public synchronized Set<String> getCandidatePaths() {
+    if (!this.ready || this.failed || this.overflow || this.baseline == null || !sync()) {
+      return null;
+    }
+    Set<String> candidates = Sets.newHashSet(this.baseline);
+    candidates.addAll(this.changedPaths);
+    return candidates;
+  }
+
+  /**
+   * @return the HEAD commit at the time the baseline was taken.
+   */
+  public synchronized ObjectId getBaselineHead() {
+    return this.baselineHead;
+  }
+
+  /**
+   * Must be called right before a full scan. Forgets all recorded changes, changes happening during the scan are
+   * recorded again.
+   */
+  public synchronized void beginFullScan() {
+    this.changedPaths.clear();
+    this.overflow = false;
+    this.baseline = null;
+  }
+
+  /**
+   * Must be called after a full scan that was started with {@link #beginFullScan()}.
+   *
+   * @param dirtyPaths all paths the full scan reported as dirty.
+   * @param head the HEAD commit the scan compared against.
+   */
+  public synchronized void setBaseline(Collection<String> dirtyPaths, ObjectId head) {
+    if (this.ready) {
+      this.baseline = Sets.newHashSet(dirtyPaths);
+      this.baselineHead = head;
+    }
+  }
+
+  public void close() {
+    try {
+      this.watchService.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+  private void run() {
+    try {
+      // the git directory is registered for the synchronization markers only
+      register(this.gitDir);
+      registerTree("", false);
+      synchronized (this) {
+        this.ready = true;
+      }
+    } catch (IOException e) {
+      if (this.log.isLoggable(Level.WARNING)) {
+        this.log.warning("Unable to watch the working tree (" + e.getMessage() + ").");
+      }
+      synchronized (this) {
+        this.failed = true;
+      }
+      close();
+      return;
+    }
+
+    try {
+      while (true) {
+        WatchKey key = this.watchService.take();
+        Path dir = this.keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+          handleEvent(dir, event);
+        }
+        if (!key.reset()) {
+          this.keys.remove(key);
+        }
+      }
+    } catch (ClosedWatchServiceException e) {
+      // watcher has been closed
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      synchronized (this) {
+        this.failed = true;
+      }
+    }
+  }
+
+  private synchronized void handleEvent(Path dir, WatchEvent<?> event) throws IOException {
+    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+      this.overflow = true;
+      return;
+    }
+    if (dir == null) {
+      return;
+    }
+
+    Path path = dir.resolve((Path) event.context());
+    if (dir.equals(this.gitDir)) {
+      String name = path.getFileName().toString();
+      if (name.startsWith(SYNC_MARKER_PREFIX) && event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+        this.seenMarkers.add(name);
+        notifyAll();
+      }
+      return;
+    }
+
+    String relativePath = toRelativePath(path);
+    boolean isDirectory = Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS);
+    if (Constants.DOT_GIT_IGNORE.equals(path.getFileName().toString())) {
+      // previously ignored directories may have to be watched now and their files may be untracked
+      registerTree("", false);
+      this.overflow = true;
+    } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && isDirectory) {
+      // files may have been created before the registration of the new directory
+      registerTree(relativePath, true);
+    } else if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY || !isDirectory) {
+      addChangedPath(relativePath);
+    }
+  }
+
+  /**
+   * Registers the passed directory and all of its subdirectories that are not ignored or contain tracked files.
+   *
+   * @param recordFiles whether to record all contained files as changed.
+   */
+  private void registerTree(String relativePath, boolean recordFiles) throws IOException {
+    TreeWalk walk = new TreeWalk(this.repository);
+    try {
+      FileTreeIterator workingTreeIterator = new FileTreeIterator(this.repository);
+      walk.addTree(workingTreeIterator);
+      walk.addTree(new DirCacheIterator(this.repository.readDirCache()));
+      workingTreeIterator.setDirCacheIterator(walk, 1);
+      if (relativePath.length() > 0) {
+        walk.setFilter(PathFilter.create(relativePath));
+      } else {
+        register(this.workTree);
+      }
+
+      while (walk.next()) {
+        WorkingTreeIterator iterator = walk.getTree(0, WorkingTreeIterator.class);
+        if (iterator == null) {
+          // only in the index
+          continue;
+        }
+        String path = walk.getPathString();
+        boolean inside = relativePath.length() == 0 || path.equals(relativePath)
+            || path.startsWith(relativePath + "/");
+        if (walk.isSubtree()) {
+          if (inside) {
+            // ignored directories still have to be watched if they contain tracked files
+            if (iterator.isEntryIgnored() && walk.getTree(1, DirCacheIterator.class) == null) {
+              continue;
+            }
+            register(this.workTree.resolve(path));
+          }
+          walk.enterSubtree();
+        } else if (inside && recordFiles) {
+          addChangedPath(path);
+        }
+      }
+    } finally {
+      walk.close();
+    }
+  }
+
+  private void register(Path dir) throws IOException {
+    WatchKey key = dir.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+    this.keys.put(key, dir);
+  }
+
+  private synchronized void addChangedPath(String relativePath) {
+    if (this.changedPaths.size() >= MAX_CHANGED_PATHS) {
+      this.overflow = true;
+    } else {
+      this.changedPaths.add(relativePath);
+    }
+  }
+
+  /**
+   * Waits until all events that happened before this call have been processed.
+   */
+  private boolean sync() {
+    String name = SYNC_MARKER_PREFIX + System.nanoTime();
+    File marker = new File(this.gitDir.toFile(), name);
+    try {
+      if (!marker.createNewFile()) {
+        return false;
+      }
+      long deadline = System.currentTimeMillis() + SYNC_TIMEOUT;
+      while (!this.seenMarkers.remove(name)) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0 || this.failed) {
+          return false;
+        }
+        wait(remaining);
+      }
+      return !this.overflow;
+    } catch (IOException e) {
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      marker.delete();
+    }
+  }
+
+  private String toRelativePath(Path path) {
+    return this.workTree.relativize(path).toString().replace(File.separatorChar, '/');
+  }
+}
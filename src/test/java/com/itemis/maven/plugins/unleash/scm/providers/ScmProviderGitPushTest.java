@@ -0,0 +1,118 @@
+package com.itemis.maven.plugins.unleash.scm.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.io.Files;
+import com.itemis.maven.plugins.unleash.scm.ScmProviderInitialization;
+import com.itemis.maven.plugins.unleash.scm.providers.util.GitSettings;
+import com.itemis.maven.plugins.unleash.scm.requests.PushRequest;
+
+public class ScmProviderGitPushTest {
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+  private Git remote;
+  private Git workingCopy;
+  private ScmProviderGit provider;
+  private String remoteRevision;
+
+  @Before
+  public void before() throws Exception {
+    File remoteDir = this.tmp.newFolder("remote.git");
+    this.remote = Git.init().setBare(true).setDirectory(remoteDir).call();
+    Git seed = Git.cloneRepository().setURI(remoteDir.toURI().toString()).setDirectory(this.tmp.newFolder("seed"))
+        .call();
+    try {
+      write(seed, "pom.xml", "<project>1.0</project>\n");
+      seed.add().addFilepattern(".").call();
+      seed.commit().setMessage("Release 1.0").call();
+      seed.tag().setName("1.0").setMessage("Release 1.0").call();
+      write(seed, "pom.xml", "<project>1.1-SNAPSHOT</project>\n");
+      seed.commit().setAll(true).setMessage("Next development version").call();
+      seed.push().setPushAll().setPushTags().call();
+    } finally {
+      seed.close();
+    }
+    this.remoteRevision = getRemoteRevision(Constants.R_HEADS + Constants.MASTER);
+
+    this.workingCopy = Git.cloneRepository().setURI(remoteDir.toURI().toString())
+        .setDirectory(this.tmp.newFolder("wc")).call();
+  }
+
+  @After
+  public void after() {
+    System.clearProperty(GitSettings.PUSH_TARGETED);
+    if (this.provider != null) {
+      this.provider.close();
+    }
+    this.workingCopy.close();
+    this.remote.close();
+  }
+
+  @Test
+  public void testTargetedPushOnDetachedHead() throws Exception {
+    givenTargetedPush(true);
+    givenTagCheckout("1.0");
+    whenPushing();
+    thenRemoteIsUnchanged();
+  }
+
+  @Test
+  public void testPushOnDetachedHead() throws Exception {
+    givenTargetedPush(false);
+    givenTagCheckout("1.0");
+    whenPushing();
+    thenRemoteIsUnchanged();
+  }
+
+  private void givenTargetedPush(boolean targeted) {
+    System.setProperty(GitSettings.PUSH_TARGETED, Boolean.toString(targeted));
+  }
+
+  private void givenTagCheckout(String tagName) throws Exception {
+    this.workingCopy.checkout().setName(Constants.R_TAGS + tagName).call();
+  }
+
+  private void whenPushing() throws Exception {
+    ScmProviderInitialization initialization = mock(ScmProviderInitialization.class);
+    when(initialization.getWorkingDirectory()).thenReturn(this.workingCopy.getRepository().getWorkTree());
+    when(initialization.getLogger()).thenReturn(Optional.of(Logger.getLogger(getClass().getName())));
+    when(initialization.getUsername()).thenReturn(Optional.<String> absent());
+    when(initialization.getPassword()).thenReturn(Optional.<String> absent());
+    when(initialization.getSshPrivateKey()).thenReturn(Optional.<String> absent());
+    when(initialization.getSshPrivateKeyPassphrase()).thenReturn(Optional.<String> absent());
+    this.provider = new ScmProviderGit();
+    this.provider.initialize(initialization);
+    this.provider.push(PushRequest.builder().build());
+  }
+
+  private void thenRemoteIsUnchanged() throws IOException {
+    assertEquals(this.remoteRevision, getRemoteRevision(Constants.R_HEADS + Constants.MASTER));
+    assertEquals(2, this.remote.getRepository().getRefDatabase().getRefs(Constants.R_REFS).size());
+  }
+
+  private String getRemoteRevision(String refName) throws IOException {
+    Ref ref = this.remote.getRepository().exactRef(refName);
+    return ref.getObjectId().getName();
+  }
+
+  private static void write(Git git, String path, String content) throws IOException {
+    Files.write(content, new File(git.getRepository().getWorkTree(), path), Charsets.UTF_8);
+  }
+}
@@ -0,0 +1,205 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand.ResetType;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.util.FS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+public class ParallelCheckoutTest {
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+  private Git remote;
+  private Git expected;
+  private Git actual;
+
+  @Before
+  public void before() throws Exception {
+    File remoteDir = this.tmp.newFolder("remote");
+    this.remote = Git.init().setDirectory(remoteDir).call();
+    for (int i = 0; i < 300; i++) {
+      write(remoteDir, "dir" + (i % 10) + "/sub/file" + i + ".txt", "content " + i + "\n");
+    }
+    write(remoteDir, "run.sh", "#!/bin/sh\necho run\n");
+    FS.DETECTED.setExecute(new File(remoteDir, "run.sh"), true);
+    FS.DETECTED.createSymLink(new File(remoteDir, "link"), "run.sh");
+    FS.DETECTED.createSymLink(new File(remoteDir, "dir1/dirlink"), "sub");
+    write(remoteDir, ".gitattributes", "*.crlf text eol=crlf\n*.upper filter=upper\n");
+    write(remoteDir, "lines.crlf", "first\nsecond\n");
+    write(remoteDir, "smudged.upper", "smudged content\n");
+    this.remote.add().addFilepattern(".").call();
+    this.remote.commit().setMessage("initial").call();
+  }
+
+  @After
+  public void after() {
+    for (Git git : new Git[] { this.remote, this.expected, this.actual }) {
+      if (git != null) {
+        git.close();
+      }
+    }
+  }
+
+  @Test
+  public void testCheckoutMatchesClone() throws Exception {
+    givenClones();
+    whenCheckingOutInParallel(4);
+    thenWorkingTreesAreEqual();
+    thenIndexesAreEqual();
+    thenWorkingTreeIsClean();
+  }
+
+  @Test
+  public void testSingleThreadedCheckoutMatchesClone() throws Exception {
+    givenClones();
+    whenCheckingOutInParallel(1);
+    thenWorkingTreesAreEqual();
+    thenIndexesAreEqual();
+    thenWorkingTreeIsClean();
+  }
+
+  @Test
+  public void testEolAndSmudgeFilter() throws Exception {
+    givenClones();
+    whenCheckingOutInParallel(4);
+    assertEquals("first\r\nsecond\r\n", read(this.actual, "lines.crlf"));
+    assertEquals("SMUDGED CONTENT\n", read(this.actual, "smudged.upper"));
+  }
+
+  @Test
+  public void testExecutableAndSymlinks() throws Exception {
+    givenClones();
+    whenCheckingOutInParallel(4);
+    File workTree = this.actual.getRepository().getWorkTree();
+    assertTrue(FS.DETECTED.canExecute(new File(workTree, "run.sh")));
+    assertTrue(FS.DETECTED.isSymLink(new File(workTree, "link")));
+    assertEquals("run.sh", FS.DETECTED.readSymLink(new File(workTree, "link")));
+    assertEquals("sub", FS.DETECTED.readSymLink(new File(workTree, "dir1/dirlink")));
+  }
+
+  /**
+   * The reference is checked out the way a regular clone does it (a {@code DirCacheCheckout} of HEAD into the empty
+   * index, here run by a hard reset), but after the smudge filter has been configured.
+   */
+  private void givenClones() throws Exception {
+    this.expected = cloneWithoutCheckout("expected");
+    this.expected.reset().setMode(ResetType.HARD).setRef(Constants.HEAD).call();
+    this.actual = cloneWithoutCheckout("actual");
+  }
+
+  private void whenCheckingOutInParallel(int threads) throws Exception {
+    RevWalk walk = new RevWalk(this.actual.getRepository());
+    try {
+      RevCommit head = walk.parseCommit(this.actual.getRepository().resolve(Constants.HEAD));
+      new ParallelCheckout(this.actual.getRepository(), threads, Logger.getLogger(getClass().getName()))
+          .checkout(head.getTree(), null);
+    } finally {
+      walk.close();
+    }
+  }
+
+  private void thenWorkingTreesAreEqual() throws IOException {
+    Map<String, File> expectedFiles = listFiles(this.expected.getRepository().getWorkTree());
+    Map<String, File> actualFiles = listFiles(this.actual.getRepository().getWorkTree());
+    assertEquals(expectedFiles.keySet(), actualFiles.keySet());
+    for (String path : expectedFiles.keySet()) {
+      File expectedFile = expectedFiles.get(path);
+      File actualFile = actualFiles.get(path);
+      assertEquals(path, FS.DETECTED.isSymLink(expectedFile), FS.DETECTED.isSymLink(actualFile));
+      assertEquals(path, expectedFile.isDirectory(), actualFile.isDirectory());
+      if (FS.DETECTED.isSymLink(expectedFile)) {
+        assertEquals(path, FS.DETECTED.readSymLink(expectedFile), FS.DETECTED.readSymLink(actualFile));
+      } else if (expectedFile.isFile()) {
+        assertEquals(path, FS.DETECTED.canExecute(expectedFile), FS.DETECTED.canExecute(actualFile));
+        assertArrayEquals(path, Files.toByteArray(expectedFile), Files.toByteArray(actualFile));
+      }
+    }
+  }
+
+  private void thenIndexesAreEqual() throws IOException {
+    DirCache expectedIndex = this.expected.getRepository().readDirCache();
+    DirCache actualIndex = this.actual.getRepository().readDirCache();
+    assertEquals(expectedIndex.getEntryCount(), actualIndex.getEntryCount());
+    for (int i = 0; i < expectedIndex.getEntryCount(); i++) {
+      DirCacheEntry expectedEntry = expectedIndex.getEntry(i);
+      DirCacheEntry actualEntry = actualIndex.getEntry(i);
+      String path = expectedEntry.getPathString();
+      assertEquals(path, actualEntry.getPathString());
+      assertEquals(path, expectedEntry.getFileMode(), actualEntry.getFileMode());
+      assertEquals(path, expectedEntry.getObjectId(), actualEntry.getObjectId());
+      if (!expectedEntry.isSmudged() && !actualEntry.isSmudged()) {
+        // racily clean entries are smudged depending on the timing of the index write
+        assertEquals(path, expectedEntry.getLength(), actualEntry.getLength());
+      }
+      assertEquals(path, expectedEntry.getStage(), actualEntry.getStage());
+    }
+  }
+
+  private void thenWorkingTreeIsClean() throws Exception {
+    assertTrue(this.actual.status().call().isClean());
+  }
+
+  private Git cloneWithoutCheckout(String name) throws Exception {
+    Git git = Git.cloneRepository().setURI(this.remote.getRepository().getDirectory().toURI().toString())
+        .setDirectory(this.tmp.newFolder(name)).setNoCheckout(true).call();
+    StoredConfig config = git.getRepository().getConfig();
+    config.setString("filter", "upper", "smudge", "tr a-z A-Z");
+    config.setString("filter", "upper", "clean", "tr A-Z a-z");
+    config.save();
+    // what the clone would have done before the checkout
+    git.branchCreate().setName(Constants.MASTER).setStartPoint(Constants.DEFAULT_REMOTE_NAME + "/" + Constants.MASTER)
+        .call();
+    return git;
+  }
+
+  private static Map<String, File> listFiles(File workTree) throws IOException {
+    Map<String, File> files = Maps.newTreeMap();
+    listFiles(workTree, "", files);
+    return files;
+  }
+
+  private static void listFiles(File dir, String prefix, Map<String, File> files) throws IOException {
+    for (File file : dir.listFiles()) {
+      String path = prefix + file.getName();
+      if (path.equals(Constants.DOT_GIT)) {
+        continue;
+      }
+      files.put(path, file);
+      if (file.isDirectory() && !FS.DETECTED.isSymLink(file)) {
+        listFiles(file, path + "/", files);
+      }
+    }
+  }
+
+  private static void write(File dir, String path, String content) throws IOException {
+    File file = new File(dir, path);
+    file.getParentFile().mkdirs();
+    Files.write(content, file, Charsets.UTF_8);
+  }
+
+  private static String read(Git git, String path) throws IOException {
+    return Files.toString(new File(git.getRepository().getWorkTree(), path), Charsets.UTF_8);
+  }
+}
@@ -0,0 +1,257 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.eclipse.jgit.api.AddCommand;
+import org.eclipse.jgit.api.CommitCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.RmCommand;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.StatusCommand;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+public class PartialCommitTest {
+  private static final PersonIdent COMMITTER = new PersonIdent("Committer", "committer@example.com",
+      new Date(1500000000000L), TimeZone.getTimeZone("UTC"));
+  private static final String MESSAGE = "Release 1.0\n\nUpdated the POMs.";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+  private Git expected;
+  private Git actual;
+  private RevCommit expectedCommit;
+  private RevCommit actualCommit;
+
+  @Before
+  public void before() throws Exception {
+    this.expected = createRepository("expected");
+    this.actual = createRepository("actual");
+  }
+
+  @After
+  public void after() {
+    this.expected.close();
+    this.actual.close();
+  }
+
+  @Test
+  public void testNewModifiedAndDeletedFiles() throws Exception {
+    givenFile("pom.xml", "<project>changed</project>\n");
+    givenFile("new.txt", "new\n");
+    givenDeletedFile("obsolete.txt");
+    givenFile("other.txt", "not committed\n");
+    whenCommitting("pom.xml", "new.txt", "obsolete.txt");
+    thenCommitsAreEqual();
+    thenIndexesAreEqual();
+    thenReflogsAreEqual();
+    thenStatusesAreEqual();
+  }
+
+  @Test
+  public void testDirectoryPaths() throws Exception {
+    givenFile("module1/pom.xml", "<project>module 1 changed</project>\n");
+    givenFile("module1/src/new/New.java", "class New {}\n");
+    givenDeletedFile("module1/src/Main.java");
+    givenFile("module2/pom.xml", "<project>module 2 changed</project>\n");
+    givenFile("module3/pom.xml", "<project>module 3 not committed</project>\n");
+    whenCommitting("module1", "module2/pom.xml");
+    thenCommitsAreEqual();
+    thenIndexesAreEqual();
+    thenReflogsAreEqual();
+    thenStatusesAreEqual();
+  }
+
+  @Test
+  public void testStagedChangesOutsideCommitPaths() throws Exception {
+    givenStagedFile("other.txt", "staged\n");
+    givenStagedFile("module3/added.txt", "staged new file\n");
+    givenFile("pom.xml", "<project>changed</project>\n");
+    whenCommitting("pom.xml");
+    thenCommitsAreEqual();
+    thenIndexesAreEqual();
+    thenReflogsAreEqual();
+    thenStatusesAreEqual();
+    assertTrue(this.actual.status().call().getChanged().contains("other.txt"));
+    assertTrue(this.actual.status().call().getAdded().contains("module3/added.txt"));
+  }
+
+  @Test
+  public void testAutoCrlf() throws Exception {
+    givenConfig(ConfigConstants.CONFIG_KEY_AUTOCRLF, "true");
+    givenFile("pom.xml", "<project>\r\n  changed\r\n</project>\r\n");
+    givenFile("module1/new.txt", "new\r\n");
+    whenCommitting("pom.xml", "module1");
+    thenCommitsAreEqual();
+    thenIndexesAreEqual();
+    thenStatusesAreEqual();
+    assertFalse(readBlob(this.actual, "pom.xml").contains("\r"));
+  }
+
+  @Test
+  public void testAutoCrlfInput() throws Exception {
+    givenConfig(ConfigConstants.CONFIG_KEY_AUTOCRLF, "input");
+    givenFile("pom.xml", "<project>\r\n  changed\r\n</project>\r\n");
+    whenCommitting("pom.xml");
+    thenCommitsAreEqual();
+    thenIndexesAreEqual();
+    thenStatusesAreEqual();
+  }
+
+  private Git createRepository(String name) throws Exception {
+    File dir = this.tmp.newFolder(name);
+    Git git = Git.init().setDirectory(dir).call();
+    write(git, "pom.xml", "<project/>\n");
+    write(git, "obsolete.txt", "obsolete\n");
+    write(git, "other.txt", "other\n");
+    for (int i = 1; i <= 3; i++) {
+      write(git, "module" + i + "/pom.xml", "<project>module " + i + "</project>\n");
+      write(git, "module" + i + "/src/Main.java", "class Main {}\n");
+    }
+    git.add().addFilepattern(".").call();
+    git.commit().setMessage("initial").setCommitter(COMMITTER).setAuthor(COMMITTER).call();
+    return git;
+  }
+
+  private void givenConfig(String key, String value) throws IOException {
+    for (Git git : new Git[] { this.expected, this.actual }) {
+      StoredConfig config = git.getRepository().getConfig();
+      config.setString(ConfigConstants.CONFIG_CORE_SECTION, null, key, value);
+      config.save();
+    }
+  }
+
+  private void givenFile(String path, String content) throws IOException {
+    write(this.expected, path, content);
+    write(this.actual, path, content);
+  }
+
+  private void givenDeletedFile(String path) {
+    assertTrue(new File(this.expected.getRepository().getWorkTree(), path).delete());
+    assertTrue(new File(this.actual.getRepository().getWorkTree(), path).delete());
+  }
+
+  private void givenStagedFile(String path, String content) throws Exception {
+    givenFile(path, content);
+    this.expected.add().addFilepattern(path).call();
+    this.actual.add().addFilepattern(path).call();
+  }
+
+  /**
+   * Commits the paths like the provider did before: staging the changed paths of the status and committing them with
+   * {@link CommitCommand#setOnly(String)}. The partial commit gets the same changed paths.
+   */
+  private void whenCommitting(String... paths) throws Exception {
+    List<String> onlyPaths = Arrays.asList(paths);
+
+    Status expectedStatus = getStatus(this.expected, onlyPaths);
+    AddCommand add = this.expected.add();
+    for (String path : getPathsToAdd(expectedStatus)) {
+      add.addFilepattern(path);
+    }
+    add.call();
+    if (!expectedStatus.getMissing().isEmpty()) {
+      RmCommand rm = this.expected.rm().setCached(true);
+      for (String path : expectedStatus.getMissing()) {
+        rm.addFilepattern(path);
+      }
+      rm.call();
+    }
+    CommitCommand commit = this.expected.commit().setMessage(MESSAGE).setCommitter(COMMITTER).setAuthor(COMMITTER);
+    for (String path : onlyPaths) {
+      commit.setOnly(path);
+    }
+    this.expectedCommit = commit.call();
+
+    Status actualStatus = getStatus(this.actual, onlyPaths);
+    this.actualCommit = new PartialCommit(this.actual.getRepository(), 100).commit(onlyPaths,
+        getPathsToAdd(actualStatus), actualStatus.getMissing(), MESSAGE, COMMITTER);
+  }
+
+  private void thenCommitsAreEqual() {
+    assertEquals(this.expectedCommit.getTree(), this.actualCommit.getTree());
+    assertEquals(this.expectedCommit, this.actualCommit);
+  }
+
+  private void thenIndexesAreEqual() throws IOException {
+    assertEquals(describeIndex(this.expected), describeIndex(this.actual));
+  }
+
+  private void thenReflogsAreEqual() throws IOException {
+    for (String ref : new String[] { Constants.HEAD, Constants.R_HEADS + Constants.MASTER }) {
+      assertEquals(this.expected.getRepository().getReflogReader(ref).getLastEntry().getComment(),
+          this.actual.getRepository().getReflogReader(ref).getLastEntry().getComment());
+    }
+  }
+
+  private void thenStatusesAreEqual() throws Exception {
+    Status expectedStatus = this.expected.status().call();
+    Status actualStatus = this.actual.status().call();
+    assertEquals(expectedStatus.getAdded(), actualStatus.getAdded());
+    assertEquals(expectedStatus.getChanged(), actualStatus.getChanged());
+    assertEquals(expectedStatus.getRemoved(), actualStatus.getRemoved());
+    assertEquals(expectedStatus.getModified(), actualStatus.getModified());
+    assertEquals(expectedStatus.getMissing(), actualStatus.getMissing());
+    assertEquals(expectedStatus.getUntracked(), actualStatus.getUntracked());
+  }
+
+  private static Status getStatus(Git git, List<String> paths) throws Exception {
+    StatusCommand status = git.status();
+    for (String path : paths) {
+      status.addPath(path);
+    }
+    return status.call();
+  }
+
+  private static Set<String> getPathsToAdd(Status status) {
+    Set<String> paths = Sets.newHashSet(status.getModified());
+    paths.addAll(status.getUntracked());
+    return paths;
+  }
+
+  private static String describeIndex(Git git) throws IOException {
+    DirCache index = git.getRepository().readDirCache();
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < index.getEntryCount(); i++) {
+      DirCacheEntry entry = index.getEntry(i);
+      sb.append(entry.getPathString()).append(' ').append(entry.getFileMode()).append(' ')
+          .append(entry.getObjectId().name()).append(' ').append(entry.getStage()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  private static String readBlob(Git git, String path) throws IOException {
+    DirCacheEntry entry = git.getRepository().readDirCache().getEntry(path);
+    return new String(git.getRepository().open(entry.getObjectId()).getBytes(), Charsets.UTF_8);
+  }
+
+  private static void write(Git git, String path, String content) throws IOException {
+    File file = new File(git.getRepository().getWorkTree(), path);
+    file.getParentFile().mkdirs();
+    Files.write(content, file, Charsets.UTF_8);
+  }
+}
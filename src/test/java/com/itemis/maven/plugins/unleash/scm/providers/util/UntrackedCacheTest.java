@@ -0,0 +1,167 @@
+package com.itemis.maven.plugins.unleash.scm.providers.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+public class UntrackedCacheTest {
+  private static final long OLD = System.currentTimeMillis() - 60000;
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+  private Git git;
+  private File workTree;
+  private UntrackedCache cache;
+  private UntrackedCache.Result result;
+
+  @Before
+  public void before() throws Exception {
+    this.git = Git.init().setDirectory(this.tmp.newFolder("repo")).call();
+    this.workTree = this.git.getRepository().getWorkTree();
+    write("pom.xml", "<project/>\n");
+    write("sub/.gitignore", "*.tmp\n");
+    write("sub/Main.java", "class Main {}\n");
+    this.git.add().addFilepattern(".").call();
+    this.git.commit().setMessage("initial").call();
+    this.cache = new UntrackedCache(this.git.getRepository());
+  }
+
+  @After
+  public void after() {
+    this.git.close();
+  }
+
+  @Test
+  public void testChangedGitignore() throws Exception {
+    write("sub/a.log", "a\n");
+    write("sub/deeper/b.log", "b\n");
+    givenDirectoriesAreNotRacy();
+    whenScanning();
+    thenUntrackedFilesAre("sub/a.log", "sub/deeper/b.log");
+
+    // rewriting a file in place does not change the modification time of its directory
+    write("sub/.gitignore", "*.tmp\n*.log\n");
+    givenDirectoriesAreNotRacy();
+    whenScanning();
+    thenUntrackedFilesAre();
+  }
+
+  @Test
+  public void testChangedInfoExclude() throws Exception {
+    write("a.log", "a\n");
+    write("sub/b.log", "b\n");
+    givenDirectoriesAreNotRacy();
+    whenScanning();
+    thenUntrackedFilesAre("a.log", "sub/b.log");
+
+    writeExclude("*.log\n");
+    givenDirectoriesAreNotRacy();
+    whenScanning();
+    thenUntrackedFilesAre();
+
+    writeExclude("# nothing excluded\n");
+    givenDirectoriesAreNotRacy();
+    whenScanning();
+    thenUntrackedFilesAre("a.log", "sub/b.log");
+  }
+
+  @Test
+  public void testRacyDirectory() throws Exception {
+    write("racy/a.txt", "a\n");
+    File racy = new File(this.workTree, "racy");
+    long lastModified = racy.lastModified();
+    whenScanning();
+    thenUntrackedFilesAre("racy/a.txt");
+
+    // a second file within the timestamp resolution of the directory
+    write("racy/b.txt", "b\n");
+    assertTrue(racy.setLastModified(lastModified));
+    whenScanning();
+    thenUntrackedFilesAre("racy/a.txt", "racy/b.txt");
+  }
+
+  @Test
+  public void testNestedRepository() throws Exception {
+    write("nested/file.txt", "nested\n");
+    givenDirectoriesAreNotRacy();
+    whenScanning();
+    thenUntrackedFilesAre("nested/file.txt");
+    assertTrue(this.result.getUntrackedFolders().contains("nested"));
+
+    Git.init().setDirectory(new File(this.workTree, "nested")).call().close();
+    givenDirectoriesAreNotRacy();
+    whenScanning();
+    thenUntrackedFilesAre("nested");
+
+    FileUtils.delete(new File(this.workTree, "nested/" + Constants.DOT_GIT), FileUtils.RECURSIVE);
+    givenDirectoriesAreNotRacy();
+    whenScanning();
+    thenUntrackedFilesAre("nested/file.txt");
+  }
+
+  @Test
+  public void testCacheIsPersisted() throws Exception {
+    write("sub/a.log", "a\n");
+    givenDirectoriesAreNotRacy();
+    whenScanning();
+    thenUntrackedFilesAre("sub/a.log");
+
+    write("sub/.gitignore", "*.tmp\n*.log\n");
+    givenDirectoriesAreNotRacy();
+    this.cache = new UntrackedCache(this.git.getRepository());
+    whenScanning();
+    thenUntrackedFilesAre();
+  }
+
+  /**
+   * Moves the modification times of all directories out of the racy interval, so that the cache trusts them.
+   */
+  private void givenDirectoriesAreNotRacy() {
+    setOld(this.workTree);
+  }
+
+  private void whenScanning() throws IOException {
+    this.result = this.cache.scan(this.git.getRepository().readDirCache(), Collections.<String> emptySet());
+  }
+
+  private void thenUntrackedFilesAre(String... paths) {
+    assertEquals(Sets.newHashSet(paths), this.result.getUntrackedFiles());
+  }
+
+  private void setOld(File directory) {
+    for (File child : directory.listFiles()) {
+      if (child.isDirectory() && !child.getName().equals(Constants.DOT_GIT)) {
+        setOld(child);
+      }
+    }
+    assertTrue(directory.setLastModified(OLD));
+  }
+
+  private void write(String path, String content) throws IOException {
+    File file = new File(this.workTree, path);
+    file.getParentFile().mkdirs();
+    Files.write(content, file, Charsets.UTF_8);
+  }
+
+  private void writeExclude(String content) throws IOException {
+    File exclude = new File(this.git.getRepository().getDirectory(), Constants.INFO_EXCLUDE);
+    exclude.getParentFile().mkdirs();
+    Files.write(content, exclude, Charsets.UTF_8);
+  }
+}